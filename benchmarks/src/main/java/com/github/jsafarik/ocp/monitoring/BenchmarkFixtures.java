@@ -0,0 +1,87 @@
+package com.github.jsafarik.ocp.monitoring;
+
+import com.github.jsafarik.ocp.monitoring.cluster.Cluster;
+import com.github.jsafarik.ocp.monitoring.cluster.Kubeconfig;
+import com.github.jsafarik.ocp.monitoring.cluster.Manager;
+import com.github.jsafarik.ocp.monitoring.config.Configurations;
+import com.github.jsafarik.ocp.monitoring.job.impl.AccessibilityJob;
+import com.github.jsafarik.ocp.monitoring.job.impl.DeployCheckJob;
+import com.github.jsafarik.ocp.monitoring.util.http.HttpTransport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import io.fabric8.kubernetes.client.internal.KubeConfigUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Data and objects shared by the benchmarks, created without the application container and without any network access.
+ */
+public class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Kubeconfig with the given number of contexts named "ctx-N", each with its own cluster and user.
+     */
+    public static String kubeconfig(int contexts) {
+        StringBuilder clusters = new StringBuilder("clusters:\n");
+        StringBuilder contextEntries = new StringBuilder("contexts:\n");
+        StringBuilder users = new StringBuilder("users:\n");
+        for (int i = 0; i < contexts; i++) {
+            clusters.append("- name: cluster-").append(i).append('\n')
+                .append("  cluster:\n")
+                .append("    server: https://api.cluster-").append(i).append(".example.com:6443\n");
+            contextEntries.append("- name: ctx-").append(i).append('\n')
+                .append("  context:\n")
+                .append("    cluster: cluster-").append(i).append('\n')
+                .append("    user: user-").append(i).append('\n');
+            users.append("- name: user-").append(i).append('\n')
+                .append("  user:\n")
+                .append("    token: token-").append(i).append('\n');
+        }
+        return "apiVersion: v1\nkind: Config\n" + clusters + contextEntries + users + "current-context: ctx-0\n";
+    }
+
+    /**
+     * Manager tracking the clusters of a local kubeconfig with the given number of contexts, every second cluster is working.
+     */
+    public static Manager manager(int clusters) {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        Manager manager = new Manager(registry, new HttpTransport(Configurations.load(), registry));
+
+        Kubeconfig kubeconfig = manager.getKubeconfig(write(kubeconfig(clusters)).toUri().toString());
+        kubeconfig.updateContents();
+        try {
+            io.fabric8.kubernetes.api.model.Config config = KubeConfigUtils.parseConfigFromString(kubeconfig.getContents());
+            kubeconfig.reconcile(config, config.getContexts());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        List<Cluster> tracked = kubeconfig.getClusters();
+        for (int i = 0; i < tracked.size(); i++) {
+            tracked.get(i).updateMetric(AccessibilityJob.METRIC_ACCESSIBILITY_NAME, true);
+            tracked.get(i).updateMetric(DeployCheckJob.METRIC_WORKING_NAME, i % 2 == 0);
+        }
+        return manager;
+    }
+
+    /**
+     * Write the contents to a new temporary file deleted on exit.
+     */
+    public static Path write(String contents) {
+        try {
+            Path file = Files.createTempFile("benchmark", ".yaml");
+            file.toFile().deleteOnExit();
+            return Files.writeString(file, contents);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
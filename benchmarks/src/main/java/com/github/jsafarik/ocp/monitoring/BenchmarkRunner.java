@@ -0,0 +1,24 @@
+package com.github.jsafarik.ocp.monitoring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the benchmarks with the GC profiler unless another profiler is chosen, so each throughput result comes together
+ * with the allocation rate (gc.alloc.rate.norm is the number of bytes allocated per operation). <br/>
+ * Accepts the usual JMH command line options, e.g. a regular expression selecting the benchmarks.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-prof")) {
+            options.add("-prof");
+            options.add("gc");
+        }
+        Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.jsafarik.ocp.monitoring.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.jsafarik.ocp.monitoring.BenchmarkFixtures;
+import com.github.jsafarik.ocp.monitoring.cluster.Manager;
+
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Searching the working clusters by a substring of their URL or context name, with a query matching a few clusters
+ * ("ctx-12") and a query matching all of them ("example").
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApiBenchmark {
+
+    @Param({"100", "1000"})
+    private int clusters;
+
+    @Param({"ctx-12", "example"})
+    private String query;
+
+    private Manager manager;
+
+    private Api api;
+
+    private final Request request = new UnconditionalRequest();
+
+    @Setup
+    public void setUp() {
+        manager = BenchmarkFixtures.manager(clusters);
+        api = new Api(manager, new ObjectMapper());
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.retainKubeconfigs(List.of());
+    }
+
+    @Benchmark
+    public Response getWorkingClustersSubstring() {
+        return api.getWorkingClusters(request, query, "substring", null, null);
+    }
+}
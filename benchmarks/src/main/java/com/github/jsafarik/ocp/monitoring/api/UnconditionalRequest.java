@@ -0,0 +1,45 @@
+package com.github.jsafarik.ocp.monitoring.api;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Variant;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * GET request without any precondition, so every call computes the response.
+ */
+class UnconditionalRequest implements Request {
+
+    @Override
+    public String getMethod() {
+        return "GET";
+    }
+
+    @Override
+    public Variant selectVariant(List<Variant> variants) {
+        return null;
+    }
+
+    @Override
+    public Response.ResponseBuilder evaluatePreconditions(EntityTag eTag) {
+        return null;
+    }
+
+    @Override
+    public Response.ResponseBuilder evaluatePreconditions(Date lastModified) {
+        return null;
+    }
+
+    @Override
+    public Response.ResponseBuilder evaluatePreconditions(Date lastModified, EntityTag eTag) {
+        return null;
+    }
+
+    @Override
+    public Response.ResponseBuilder evaluatePreconditions() {
+        return null;
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.jsafarik.ocp.monitoring.cluster;
+
+import com.github.jsafarik.ocp.monitoring.BenchmarkFixtures;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Updating a metric of a cluster, both when the value stays the same (the usual result of a check)
+ * and when it changes and the listeners are notified.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClusterBenchmark {
+
+    private static final String METRIC = "benchmark.metric";
+
+    private Manager manager;
+
+    private Cluster cluster;
+
+    private int value;
+
+    @Setup
+    public void setUp() {
+        manager = BenchmarkFixtures.manager(1);
+        cluster = manager.getKubeconfigs().get(0).getClusters().get(0);
+        cluster.updateMetric(METRIC, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.retainKubeconfigs(List.of());
+    }
+
+    @Benchmark
+    public void updateMetricUnchanged() {
+        cluster.updateMetric(METRIC, 0);
+    }
+
+    @Benchmark
+    public void updateMetricChanged() {
+        value ^= 1;
+        cluster.updateMetric(METRIC, value);
+    }
+
+    @Benchmark
+    public void updateMetricWithTags() {
+        cluster.updateMetric(METRIC, 0, "stage", "deploy");
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.jsafarik.ocp.monitoring.cluster;
+
+import com.github.jsafarik.ocp.monitoring.BenchmarkFixtures;
+import com.github.jsafarik.ocp.monitoring.job.impl.DeployCheckJob;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading the working clusters, and republishing the working snapshot when a cluster stops or starts working.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManagerBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int clusters;
+
+    private Manager manager;
+
+    private Cluster toggled;
+
+    private boolean working;
+
+    @Setup
+    public void setUp() {
+        manager = BenchmarkFixtures.manager(clusters);
+        toggled = manager.getKubeconfigs().get(0).getClusters().get(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.retainKubeconfigs(List.of());
+    }
+
+    @Benchmark
+    public Set<String> getWorkingClusters() {
+        return manager.getWorkingClusters();
+    }
+
+    @Benchmark
+    public void toggleWorking() {
+        working = !working;
+        toggled.updateMetric(DeployCheckJob.METRIC_WORKING_NAME, working);
+    }
+}
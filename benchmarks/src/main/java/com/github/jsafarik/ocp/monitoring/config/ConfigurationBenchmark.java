@@ -0,0 +1,66 @@
+package com.github.jsafarik.ocp.monitoring.config;
+
+import com.github.jsafarik.ocp.monitoring.BenchmarkFixtures;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading the kubeconfigs from the configuration, and parsing the whole configuration again as a reload does,
+ * with the kubeconfigs given in a configuration file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigurationBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int kubeconfigs;
+
+    private Configuration configuration;
+
+    @Setup
+    public void setUp() {
+        StringBuilder properties = new StringBuilder("monitoring.context.filters=ctx\n");
+        for (int i = 0; i < kubeconfigs; i++) {
+            properties.append("monitoring.kubeconfig.").append(i).append("=https://kubeconfigs.example.com/").append(i).append('\n');
+        }
+        Path file = BenchmarkFixtures.write(properties.toString());
+        System.setProperty("monitoring.config.file", file.toString());
+        configuration = Configurations.load();
+    }
+
+    @TearDown
+    public void tearDown() {
+        configuration.stopWatching();
+    }
+
+    @Benchmark
+    public Map<String, List<String>> getKubeconfigsWithFilters() {
+        return configuration.getKubeconfigsWithFilters();
+    }
+
+    @Benchmark
+    public Set<String> reload() {
+        return configuration.reload();
+    }
+}
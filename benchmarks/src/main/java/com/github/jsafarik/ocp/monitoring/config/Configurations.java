@@ -0,0 +1,20 @@
+package com.github.jsafarik.ocp.monitoring.config;
+
+/**
+ * Creates {@link Configuration} the way the container does, its initialization is not public.
+ */
+public class Configurations {
+
+    private Configurations() {
+    }
+
+    /**
+     * Load the configuration from the environment, the system properties and the configuration file given
+     * by the "monitoring.config.file" system property (if any).
+     */
+    public static Configuration load() {
+        Configuration configuration = new Configuration();
+        configuration.init();
+        return configuration;
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.jsafarik.ocp.monitoring.job.impl;
+
+import com.github.jsafarik.ocp.monitoring.BenchmarkFixtures;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.fabric8.kubernetes.api.model.Config;
+import io.fabric8.kubernetes.api.model.NamedContext;
+import io.fabric8.kubernetes.client.internal.KubeConfigUtils;
+
+/**
+ * Filtering the contexts of a parsed kubeconfig, and parsing the kubeconfig before filtering as each changed kubeconfig is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdateKubeconfigsJobBenchmark {
+
+    private static final List<String> FILTERS = List.of("ctx", "1");
+
+    @Param({"10", "100", "1000"})
+    private int contexts;
+
+    private String contents;
+
+    private Config config;
+
+    @Setup
+    public void setUp() throws IOException {
+        contents = BenchmarkFixtures.kubeconfig(contexts);
+        config = KubeConfigUtils.parseConfigFromString(contents);
+    }
+
+    @Benchmark
+    public List<NamedContext> getContexts() {
+        return UpdateKubeconfigsJob.getContexts(config, FILTERS);
+    }
+
+    @Benchmark
+    public List<NamedContext> parseAndGetContexts() throws IOException {
+        return UpdateKubeconfigsJob.getContexts(KubeConfigUtils.parseConfigFromString(contents), FILTERS);
+    }
+}
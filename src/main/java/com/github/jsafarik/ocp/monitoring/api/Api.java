@@ -1,29 +1,70 @@
 package com.github.jsafarik.ocp.monitoring.api;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.jsafarik.ocp.monitoring.cluster.CheckHistory;
+import com.github.jsafarik.ocp.monitoring.cluster.Cluster;
+import com.github.jsafarik.ocp.monitoring.cluster.Kubeconfig;
 import com.github.jsafarik.ocp.monitoring.cluster.Manager;
+import com.github.jsafarik.ocp.monitoring.cluster.WorkingSnapshot;
 
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
 
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
 
 import lombok.extern.jbosslog.JBossLog;
 
 /**
- * Minimalistic API which can be used by other services (Jenkins, scripts, ...)
+ * Minimalistic API which can be used by other services (Jenkins, scripts, ...) <br/>
+ * Lists of clusters can be paginated by the "limit" query parameter, the cursor of the next page is returned
+ * in the {@link Api#NEXT_CURSOR_HEADER} header and is passed back in the "cursor" query parameter. <br/>
+ * Every response carries the ETag of the snapshot of the working clusters it was computed from, a request with a matching
+ * If-None-Match header gets 304 Not Modified without computing anything. The full list of the working clusters is serialized
+ * once per snapshot.
  */
 @Path("/clusters")
 @JBossLog
 public class Api {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final String MATCH_SUBSTRING = "substring";
+    private static final String MATCH_PREFIX = "prefix";
+
+    /**
+     * Distinguishes the snapshot versions of different runs of the application, which all start from the same version
+     */
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
     private Manager manager;
 
-    public Api(Manager manager) {
+    private ObjectMapper mapper;
+
+    /**
+     * Serialized list of the working clusters of the latest requested snapshot
+     */
+    private volatile SerializedSnapshot serialized;
+
+    public Api(Manager manager, ObjectMapper mapper) {
         this.manager = manager;
+        this.mapper = mapper;
     }
 
     /**
@@ -31,17 +72,128 @@ public class Api {
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public Set<String> getWorkingClusters() {
-        return manager.getWorkingClusters();
+    public Response getWorkingClusters(@Context Request request, @QueryParam("limit") Integer limit, @QueryParam("cursor") String cursor) {
+        WorkingSnapshot snapshot = manager.getWorkingSnapshot();
+        EntityTag tag = tag(snapshot);
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.tag(tag).build();
+        }
+
+        if (limit == null && cursor == null) {
+            return Response.ok(serialize(snapshot), MediaType.APPLICATION_JSON_TYPE).tag(tag).build();
+        }
+        return search(snapshot, "", MATCH_SUBSTRING, limit, cursor).tag(tag).build();
     }
 
     /**
-     * Return if given cluster is working
+     * Return working clusters whose URL or context name contains the given text (or starts with it, when "match" is "prefix"),
+     * sorted by their URL
      */
     @GET
     @Path("{cluster}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Set<String> getWorkingClusters(@PathParam("cluster") String cluster) {
-        return manager.getWorkingClusters().stream().filter(c -> c.contains(cluster)).collect(Collectors.toSet());
+    public Response getWorkingClusters(@Context Request request, @PathParam("cluster") String cluster,
+        @QueryParam("match") @DefaultValue(MATCH_SUBSTRING) String match, @QueryParam("limit") Integer limit, @QueryParam("cursor") String cursor) {
+        WorkingSnapshot snapshot = manager.getWorkingSnapshot();
+        EntityTag tag = tag(snapshot);
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.tag(tag).build();
+        }
+
+        return search(snapshot, cluster, match, limit, cursor).tag(tag).build();
+    }
+
+    /**
+     * Return the availability and the p95 latency of the checks of the cluster over the last hour, day and week,
+     * together with the latest results of the checks. The cluster is identified by its ID or its context name,
+     * which usually contain "/", so the name spans all the path segments before "/history".
+     */
+    @GET
+    @Path("{name: .+}/history")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<ClusterHistory> getHistory(@PathParam("name") String name, @QueryParam("samples") @DefaultValue("10") int samples) {
+        if (samples < 0 || samples > CheckHistory.SAMPLES) {
+            throw new BadRequestException("Samples have to be between 0 and " + CheckHistory.SAMPLES);
+        }
+
+        List<ClusterHistory> histories = new ArrayList<>();
+        for (Kubeconfig kubeconfig : manager.getKubeconfigs()) {
+            for (Cluster cluster : kubeconfig.getClusters()) {
+                if (name.equals(cluster.getId()) || name.equals(cluster.getContext())) {
+                    histories.add(new ClusterHistory(cluster.getId(), cluster.getContext(), cluster.getClient().getOpenshiftUrl().toString(),
+                        cluster.getHistory().getSummary(samples)));
+                }
+            }
+        }
+        if (histories.isEmpty()) {
+            throw new NotFoundException("Cluster " + name + " is not tracked");
+        }
+        histories.sort(Comparator.comparing(ClusterHistory::getCluster));
+        return histories;
+    }
+
+    private Response.ResponseBuilder search(WorkingSnapshot snapshot, String query, String match, Integer limit, String cursor) {
+        if (!MATCH_SUBSTRING.equals(match) && !MATCH_PREFIX.equals(match)) {
+            throw new BadRequestException("Unknown match " + match + ", use " + MATCH_SUBSTRING + " or " + MATCH_PREFIX);
+        }
+        if (limit != null && limit <= 0) {
+            throw new BadRequestException("Limit has to be positive");
+        }
+
+        String after;
+        try {
+            after = cursor == null ? null : new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException("Invalid cursor " + cursor);
+        }
+
+        int pageSize = limit == null ? Integer.MAX_VALUE : limit;
+        List<String> clusters = snapshot.getIndex().search(query, MATCH_PREFIX.equals(match), after, pageSize);
+
+        Response.ResponseBuilder response = Response.ok(clusters);
+        if (limit != null && clusters.size() == limit) {
+            String last = clusters.get(clusters.size() - 1);
+            response.header(NEXT_CURSOR_HEADER, Base64.getUrlEncoder().withoutPadding().encodeToString(last.getBytes(StandardCharsets.UTF_8)));
+        }
+        return response;
+    }
+
+    private static EntityTag tag(WorkingSnapshot snapshot) {
+        return new EntityTag(EPOCH + "-" + snapshot.getVersion());
+    }
+
+    /**
+     * Get the serialized list of the working clusters of the snapshot, serializing it only if it wasn't serialized yet.
+     */
+    private byte[] serialize(WorkingSnapshot snapshot) {
+        SerializedSnapshot current = serialized;
+        if (current != null && current.version == snapshot.getVersion()) {
+            return current.body;
+        }
+
+        try {
+            byte[] body = mapper.writeValueAsBytes(snapshot.getClusters());
+            // An older snapshot doesn't replace a newer one, a newer one is serialized again by its next request at worst
+            if (current == null || current.version < snapshot.getVersion()) {
+                serialized = new SerializedSnapshot(snapshot.getVersion(), body);
+            }
+            return body;
+        } catch (JsonProcessingException ex) {
+            throw new InternalServerErrorException("Couldn't serialize working clusters: " + ex.getMessage(), ex);
+        }
+    }
+
+    private static class SerializedSnapshot {
+
+        private final long version;
+
+        private final byte[] body;
+
+        SerializedSnapshot(long version, byte[] body) {
+            this.version = version;
+            this.body = body;
+        }
     }
 }
@@ -0,0 +1,265 @@
+package com.github.jsafarik.ocp.monitoring.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.jsafarik.ocp.monitoring.cluster.Cluster;
+import com.github.jsafarik.ocp.monitoring.cluster.ClusterListener;
+import com.github.jsafarik.ocp.monitoring.cluster.Manager;
+import com.github.jsafarik.ocp.monitoring.config.Configuration;
+import com.github.jsafarik.ocp.monitoring.job.impl.AccessibilityJob;
+import com.github.jsafarik.ocp.monitoring.job.impl.DeployCheckJob;
+import com.github.jsafarik.ocp.monitoring.job.impl.NodeCheckJob;
+
+import javax.annotation.Priority;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.interceptor.Interceptor;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.UnaryOperator;
+
+import io.quarkus.runtime.StartupEvent;
+import lombok.extern.jbosslog.JBossLog;
+
+/**
+ * Log of the changes of the clusters' accessibility, working state and node counts, streamed to the subscribers as server-sent events. <br/>
+ * Each change is a {@link ClusterEventLog#EVENT_CLUSTER} event with the whole new {@link ClusterState} of the cluster, identified
+ * by an increasing sequence number prefixed by the epoch of the run, since the sequence starts over with every run. The latest {@link Configuration#getEventsBuffer()} events are kept in a ring buffer,
+ * so a subscriber can resume from the sequence number of the last event it received. A new subscriber, or a subscriber
+ * whose last event is no longer kept or comes from another run, gets a {@link ClusterEventLog#EVENT_SNAPSHOT} event with the states of all clusters first. <br/>
+ * Each event is serialized once and sent to all subscribers by a single thread, so all subscribers get the events in the same order.
+ */
+@ApplicationScoped
+@JBossLog
+public class ClusterEventLog implements ClusterListener {
+
+    public static final String EVENT_SNAPSHOT = "snapshot";
+    public static final String EVENT_CLUSTER = "cluster";
+
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+    private final Manager manager;
+
+    private final ObjectMapper mapper;
+
+    /**
+     * The latest events, event with sequence number N is stored at index N % length
+     */
+    private final Event[] events;
+
+    /**
+     * Sequence number of the latest event, 0 before the first event
+     */
+    private long sequence;
+
+    /**
+     * Cluster ID mapped to the current state of the cluster
+     */
+    private final Map<String, ClusterState> states = new HashMap<>();
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Sends all events, the order of the tasks is the order of the events
+     */
+    private final ExecutorService sender;
+
+    public ClusterEventLog(Manager manager, ObjectMapper mapper, Configuration configuration) {
+        this.manager = manager;
+        this.mapper = mapper;
+        this.events = new Event[Math.max(1, configuration.getEventsBuffer())];
+        this.sender = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start recording the events once the application starts, even before the first subscriber and before any cluster is added.
+     */
+    public void register(@Observes @Priority(Interceptor.Priority.APPLICATION) StartupEvent event) {
+        manager.addListener(this);
+    }
+
+    /**
+     * Stream the events to the sink.
+     *
+     * @param lastEventId sequence number of the last event the subscriber received, null for a new subscriber
+     */
+    public synchronized void subscribe(Sse sse, SseEventSink sink, Long lastEventId) {
+        Subscriber subscriber = new Subscriber(sse, sink);
+
+        List<Event> initial = lastEventId == null ? null : eventsAfter(lastEventId);
+        if (initial == null) {
+            List<ClusterState> snapshot = new ArrayList<>(states.values());
+            snapshot.sort(Comparator.comparing(ClusterState::getCluster));
+            Event event = createEvent(sequence, EVENT_SNAPSHOT, snapshot);
+            initial = event == null ? List.of() : List.of(event);
+        }
+
+        List<Event> toSend = initial;
+        sender.execute(() -> toSend.forEach(subscriber::send));
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public void clusterAdded(Cluster cluster) {
+        update(cluster, UnaryOperator.identity());
+    }
+
+    @Override
+    public void clusterUpdated(Cluster cluster) {
+        update(cluster, state -> state.withUrl(cluster.getClient().getOpenshiftUrl().toString()));
+    }
+
+    @Override
+    public void clusterRemoved(Cluster cluster) {
+        update(cluster, ClusterState::asRemoved);
+    }
+
+    @Override
+    public void metricChanged(Cluster cluster, String name, Integer previous, int value) {
+        if (AccessibilityJob.METRIC_ACCESSIBILITY_NAME.equals(name)) {
+            update(cluster, state -> state.withAccessible(value == 1));
+        } else if (DeployCheckJob.METRIC_WORKING_NAME.equals(name)) {
+            update(cluster, state -> state.withWorking(value == 1));
+        } else if (NodeCheckJob.METRIC_NODE_COUNT_NAME.equals(name)) {
+            update(cluster, state -> state.withNodes(value));
+        } else if (NodeCheckJob.METRIC_READY_NODE_COUNT_NAME.equals(name)) {
+            update(cluster, state -> state.withReadyNodes(value));
+        }
+    }
+
+    /**
+     * Change the state of the cluster, record the change and send it to all subscribers.
+     */
+    private synchronized void update(Cluster cluster, UnaryOperator<ClusterState> change) {
+        ClusterState previous = states.get(cluster.getId());
+        ClusterState state = previous;
+        if (state == null) {
+            state = new ClusterState(cluster.getId(), cluster.getContext(), cluster.getClient().getOpenshiftUrl().toString());
+        }
+        state = change.apply(state);
+        if (state == previous) {
+            return;
+        }
+        if (state.isRemoved()) {
+            states.remove(cluster.getId());
+        } else {
+            states.put(cluster.getId(), state);
+        }
+
+        Event event = createEvent(sequence + 1, EVENT_CLUSTER, state);
+        if (event == null) {
+            return;
+        }
+        sequence = event.id;
+        events[(int) (sequence % events.length)] = event;
+
+        List<Subscriber> targets = List.copyOf(subscribers);
+        sender.execute(() -> targets.forEach(subscriber -> subscriber.send(event)));
+    }
+
+    /**
+     * Get the sequence number of the event ID sent by this run.
+     *
+     * @return the sequence number or null if the ID is invalid or was sent by another run
+     */
+    static Long toSequence(String eventId) {
+        int separator = eventId.lastIndexOf('-');
+        if (separator < 0 || !EPOCH.equals(eventId.substring(0, separator))) {
+            return null;
+        }
+        try {
+            return Long.parseLong(eventId.substring(separator + 1));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the kept events following the event with the given sequence number.
+     *
+     * @return the events or null if some of them are no longer kept (or the sequence number is unknown)
+     */
+    private List<Event> eventsAfter(long lastEventId) {
+        if (lastEventId > sequence || lastEventId < sequence - events.length) {
+            return null;
+        }
+        List<Event> result = new ArrayList<>();
+        for (long id = lastEventId + 1; id <= sequence; id++) {
+            result.add(events[(int) (id % events.length)]);
+        }
+        return result;
+    }
+
+    private Event createEvent(long id, String name, Object data) {
+        try {
+            return new Event(id, name, mapper.writeValueAsString(data));
+        } catch (JsonProcessingException ex) {
+            log.error("Couldn't serialize " + name + " event: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    private static class Event {
+
+        private final long id;
+
+        private final String name;
+
+        private final String data;
+
+        Event(long id, String name, String data) {
+            this.id = id;
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    private class Subscriber {
+
+        private final Sse sse;
+
+        private final SseEventSink sink;
+
+        Subscriber(Sse sse, SseEventSink sink) {
+            this.sse = sse;
+            this.sink = sink;
+        }
+
+        /**
+         * Send the event, unsubscribe when the sink is closed or the event can't be sent.
+         */
+        void send(Event event) {
+            if (sink.isClosed()) {
+                subscribers.remove(this);
+                return;
+            }
+            sink.send(sse.newEventBuilder()
+                    .id(EPOCH + "-" + event.id)
+                    .name(event.name)
+                    .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                    .data(String.class, event.data)
+                    .build())
+                .whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        log.debug("Couldn't send event " + event.id + ", closing the stream: " + ex.getMessage());
+                        subscribers.remove(this);
+                        sink.close();
+                    }
+                });
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.jsafarik.ocp.monitoring.api;
+
+import com.github.jsafarik.ocp.monitoring.cluster.CheckHistory;
+
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * History of the checks of a cluster returned by the API
+ */
+@Getter
+public class ClusterHistory {
+
+    private final String cluster;
+
+    private final String context;
+
+    private final String url;
+
+    /**
+     * Job name mapped to the rollups and the latest results of its checks
+     */
+    private final Map<String, CheckHistory.JobSummary> jobs;
+
+    ClusterHistory(String cluster, String context, String url, Map<String, CheckHistory.JobSummary> jobs) {
+        this.cluster = cluster;
+        this.context = context;
+        this.url = url;
+        this.jobs = jobs;
+    }
+}
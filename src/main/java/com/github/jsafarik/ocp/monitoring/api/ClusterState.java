@@ -0,0 +1,76 @@
+package com.github.jsafarik.ocp.monitoring.api;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Getter;
+
+/**
+ * State of a cluster published in the cluster events. <br/>
+ * Metrics which were not measured yet are null. The state is immutable, each change creates a new state.
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ClusterState {
+
+    private final String cluster;
+
+    private final String context;
+
+    private final String url;
+
+    private final Boolean accessible;
+
+    private final Boolean working;
+
+    private final Integer nodes;
+
+    private final Integer readyNodes;
+
+    private final boolean removed;
+
+    ClusterState(String cluster, String context, String url) {
+        this(cluster, context, url, null, null, null, null, false);
+    }
+
+    private ClusterState(String cluster, String context, String url, Boolean accessible, Boolean working, Integer nodes, Integer readyNodes,
+        boolean removed) {
+        this.cluster = cluster;
+        this.context = context;
+        this.url = url;
+        this.accessible = accessible;
+        this.working = working;
+        this.nodes = nodes;
+        this.readyNodes = readyNodes;
+        this.removed = removed;
+    }
+
+    /**
+     * @return state with the URL, this state if the URL is the same
+     */
+    ClusterState withUrl(String url) {
+        if (url.equals(this.url)) {
+            return this;
+        }
+        return new ClusterState(cluster, context, url, accessible, working, nodes, readyNodes, removed);
+    }
+
+    ClusterState withAccessible(boolean accessible) {
+        return new ClusterState(cluster, context, url, accessible, working, nodes, readyNodes, removed);
+    }
+
+    ClusterState withWorking(boolean working) {
+        return new ClusterState(cluster, context, url, accessible, working, nodes, readyNodes, removed);
+    }
+
+    ClusterState withNodes(int nodes) {
+        return new ClusterState(cluster, context, url, accessible, working, nodes, readyNodes, removed);
+    }
+
+    ClusterState withReadyNodes(int readyNodes) {
+        return new ClusterState(cluster, context, url, accessible, working, nodes, readyNodes, removed);
+    }
+
+    ClusterState asRemoved() {
+        return new ClusterState(cluster, context, url, accessible, working, nodes, readyNodes, true);
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.jsafarik.ocp.monitoring.api;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+
+import lombok.extern.jbosslog.JBossLog;
+
+/**
+ * Stream of cluster state changes, so the clients don't have to poll {@link Api} to find out when a cluster becomes usable
+ */
+@Path("/events")
+@JBossLog
+public class EventsApi {
+
+    private ClusterEventLog eventLog;
+
+    public EventsApi(ClusterEventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    /**
+     * Stream the snapshot of all clusters followed by their changes, or only the changes following the Last-Event-ID
+     */
+    @GET
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void getEvents(@Context Sse sse, @Context SseEventSink sink, @HeaderParam(HttpHeaders.LAST_EVENT_ID_HEADER) String lastEventId) {
+        Long lastId = null;
+        if (lastEventId != null) {
+            lastId = ClusterEventLog.toSequence(lastEventId.trim());
+            if (lastId == null) {
+                log.debug("Last-Event-ID " + lastEventId + " is invalid or from another run, sending snapshot");
+            }
+        }
+        eventLog.subscribe(sse, sink, lastId);
+    }
+}
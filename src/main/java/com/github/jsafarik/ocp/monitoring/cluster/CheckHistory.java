@@ -0,0 +1,293 @@
+package com.github.jsafarik.ocp.monitoring.cluster;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.Getter;
+
+/**
+ * History of the check results of a single cluster, kept separately for each job. <br/>
+ * The latest {@link CheckHistory#SAMPLES} results are kept in a ring buffer of primitive arrays. Besides that, each result is added
+ * to the rollups over the {@link CheckHistory#WINDOWS}: each window is split into buckets holding the number of checks, the number
+ * of passed checks and a histogram of the latencies, and keeps the totals of its buckets. When a bucket leaves the window,
+ * it is subtracted from the totals, so a rollup is read without going through the results.
+ */
+public class CheckHistory {
+
+    /**
+     * Number of the latest results kept for each job
+     */
+    public static final int SAMPLES = 120;
+
+    /**
+     * Windows of the rollups, the window is moving by its bucket
+     */
+    static final List<Window> WINDOWS = List.of(
+        new Window("1h", Duration.ofMinutes(5), 12),
+        new Window("24h", Duration.ofHours(1), 24),
+        new Window("7d", Duration.ofHours(6), 28));
+
+    /**
+     * Latency histogram bins, the upper bound of bin i is 2^(i/2) ms, the last bin is unbounded (from about 50 minutes)
+     */
+    private static final int BINS = 44;
+
+    private final Map<String, JobHistory> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Record the result of a check.
+     *
+     * @param job name of the job that ran the check
+     * @param time time in milliseconds when the check finished
+     */
+    public void record(String job, long time, boolean passed, Duration latency) {
+        jobs.computeIfAbsent(job, k -> new JobHistory()).record(time, passed, latency.toMillis());
+    }
+
+    /**
+     * Get the rollups and the latest results of all jobs.
+     *
+     * @param samples maximum number of the latest results returned for each job
+     */
+    public Map<String, JobSummary> getSummary(int samples) {
+        long now = System.currentTimeMillis();
+        Map<String, JobSummary> summary = new TreeMap<>();
+        jobs.forEach((job, history) -> summary.put(job, history.summary(now, samples)));
+        return summary;
+    }
+
+    private static int bin(long latency) {
+        if (latency <= 1) {
+            return 0;
+        }
+        return Math.min(BINS - 1, (int) Math.ceil(2 * Math.log(latency) / Math.log(2)));
+    }
+
+    private static long binUpperBound(int bin) {
+        return Math.round(Math.pow(2, bin / 2.0));
+    }
+
+    static class Window {
+
+        private final String name;
+
+        private final long bucket;
+
+        private final int buckets;
+
+        Window(String name, Duration bucket, int buckets) {
+            this.name = name;
+            this.bucket = bucket.toMillis();
+            this.buckets = buckets;
+        }
+    }
+
+    private static class JobHistory {
+
+        private final long[] times = new long[SAMPLES];
+
+        private final int[] latencies = new int[SAMPLES];
+
+        private final boolean[] results = new boolean[SAMPLES];
+
+        /**
+         * Index of the next result in the ring buffer
+         */
+        private int next;
+
+        private int size;
+
+        private final Rollup[] rollups = WINDOWS.stream().map(Rollup::new).toArray(Rollup[]::new);
+
+        synchronized void record(long time, boolean passed, long latency) {
+            times[next] = time;
+            latencies[next] = (int) Math.min(Integer.MAX_VALUE, latency);
+            results[next] = passed;
+            next = (next + 1) % SAMPLES;
+            size = Math.min(SAMPLES, size + 1);
+
+            for (Rollup rollup : rollups) {
+                rollup.add(time, passed, latency);
+            }
+        }
+
+        synchronized JobSummary summary(long now, int samples) {
+            Map<String, RollupSummary> windows = new LinkedHashMap<>();
+            for (Rollup rollup : rollups) {
+                windows.put(rollup.window.name, rollup.summary(now));
+            }
+
+            List<Sample> latest = new ArrayList<>();
+            for (int i = 1; i <= Math.min(samples, size); i++) {
+                int index = (next - i + SAMPLES) % SAMPLES;
+                latest.add(new Sample(times[index], results[index], latencies[index]));
+            }
+            return new JobSummary(windows, latest);
+        }
+    }
+
+    /**
+     * Rollup of the results over a single window
+     */
+    private static class Rollup {
+
+        private final Window window;
+
+        /**
+         * Number of the bucket (time divided by the bucket length) held by each slot, -1 for an empty slot
+         */
+        private final long[] ids;
+
+        private final int[] checks;
+
+        private final int[] passed;
+
+        /**
+         * Latency histograms of the buckets, {@link CheckHistory#BINS} values per bucket
+         */
+        private final int[] latencies;
+
+        private int totalChecks;
+
+        private int totalPassed;
+
+        private final int[] totalLatencies = new int[BINS];
+
+        Rollup(Window window) {
+            this.window = window;
+            this.ids = new long[window.buckets];
+            this.checks = new int[window.buckets];
+            this.passed = new int[window.buckets];
+            this.latencies = new int[window.buckets * BINS];
+            Arrays.fill(ids, -1);
+        }
+
+        void add(long time, boolean ok, long latency) {
+            long id = time / window.bucket;
+            expire(id);
+            int slot = (int) (id % window.buckets);
+            if (ids[slot] != id) {
+                if (ids[slot] > id) {
+                    // The result is older than the whole window
+                    return;
+                }
+                ids[slot] = id;
+            }
+
+            int bin = bin(latency);
+            checks[slot]++;
+            latencies[slot * BINS + bin]++;
+            totalChecks++;
+            totalLatencies[bin]++;
+            if (ok) {
+                passed[slot]++;
+                totalPassed++;
+            }
+        }
+
+        RollupSummary summary(long now) {
+            expire(now / window.bucket);
+            if (totalChecks == 0) {
+                return new RollupSummary(0, 0, null, null);
+            }
+
+            long p95 = 0;
+            int threshold = (int) Math.ceil(totalChecks * 0.95);
+            int cumulative = 0;
+            for (int bin = 0; bin < BINS; bin++) {
+                cumulative += totalLatencies[bin];
+                if (cumulative >= threshold) {
+                    p95 = binUpperBound(bin);
+                    break;
+                }
+            }
+            return new RollupSummary(totalChecks, totalPassed, 100.0 * totalPassed / totalChecks, p95);
+        }
+
+        /**
+         * Subtract the buckets which are no longer in the window ending with the given bucket.
+         */
+        private void expire(long current) {
+            for (int slot = 0; slot < window.buckets; slot++) {
+                if (ids[slot] < 0 || ids[slot] > current - window.buckets) {
+                    continue;
+                }
+                totalChecks -= checks[slot];
+                totalPassed -= passed[slot];
+                for (int bin = 0; bin < BINS; bin++) {
+                    totalLatencies[bin] -= latencies[slot * BINS + bin];
+                    latencies[slot * BINS + bin] = 0;
+                }
+                checks[slot] = 0;
+                passed[slot] = 0;
+                ids[slot] = -1;
+            }
+        }
+    }
+
+    @Getter
+    public static class JobSummary {
+
+        /**
+         * Window name mapped to the rollup over the window
+         */
+        private final Map<String, RollupSummary> windows;
+
+        /**
+         * The latest results, the newest first
+         */
+        private final List<Sample> samples;
+
+        JobSummary(Map<String, RollupSummary> windows, List<Sample> samples) {
+            this.windows = windows;
+            this.samples = samples;
+        }
+    }
+
+    @Getter
+    public static class RollupSummary {
+
+        private final int checks;
+
+        private final int passed;
+
+        /**
+         * Percentage of passed checks, null if there was no check
+         */
+        private final Double availability;
+
+        /**
+         * 95th percentile of the latencies in milliseconds (upper bound of its histogram bin), null if there was no check
+         */
+        private final Long p95LatencyMs;
+
+        RollupSummary(int checks, int passed, Double availability, Long p95LatencyMs) {
+            this.checks = checks;
+            this.passed = passed;
+            this.availability = availability;
+            this.p95LatencyMs = p95LatencyMs;
+        }
+    }
+
+    @Getter
+    public static class Sample {
+
+        private final long time;
+
+        private final boolean passed;
+
+        private final int latencyMs;
+
+        Sample(long time, boolean passed, int latencyMs) {
+            this.time = time;
+            this.passed = passed;
+            this.latencyMs = latencyMs;
+        }
+    }
+}
@@ -1,59 +1,129 @@
 package com.github.jsafarik.ocp.monitoring.cluster;
 
-import java.util.HashMap;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.fabric8.kubernetes.client.Config;
-import io.fabric8.openshift.client.DefaultOpenShiftClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
 import io.fabric8.openshift.client.OpenShiftClient;
-import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import lombok.Getter;
+import lombok.extern.jbosslog.JBossLog;
 
 /**
- * Class representing each cluster tracked by this monitoring app
+ * Class representing each cluster tracked by this monitoring app <br/>
+ * The cluster's client uses the {@link com.github.jsafarik.ocp.monitoring.util.http.HttpTransport} shared by all clusters. <br/>
+ * Metrics can be restored from a previous run of the application, a restored metric is marked by
+ * the {@link Cluster#METRIC_RESTORED_TIMESTAMP_NAME} metric until it is updated by a check.
  */
+@JBossLog
 public class Cluster {
 
-    Map<String, AtomicInteger> metrics;
+    /**
+     * Time in seconds since the epoch when the restored value of the metric in the "metric" tag was measured, 0 once the metric is updated
+     */
+    public static final String METRIC_RESTORED_TIMESTAMP_NAME = "cluster.restored.timestamp";
 
+    /**
+     * Client of the cluster, replaced when the entries of the cluster's context in the kubeconfig change
+     */
     @Getter
-    private OpenShiftClient client;
+    private volatile OpenShiftClient client;
 
-    private boolean deleted;
+    /**
+     * Kubeconfig this cluster was created from
+     */
+    @Getter
+    private Kubeconfig kubeconfig;
+
+    /**
+     * Name of the kubeconfig context this cluster was created from
+     */
+    @Getter
+    private String context;
 
     private MeterRegistry registry;
 
-    public Cluster(String kubeconfigContents, String context, MeterRegistry registry) {
-        Config config = Config.fromKubeconfig(context, kubeconfigContents, null);
-        this.client = new DefaultOpenShiftClient(config);
+    /**
+     * All meters of the cluster, tagged with the API URL
+     */
+    private MetricStore metrics;
 
-        this.metrics = new HashMap<>();
+    private NodeWatcher nodeWatcher;
+
+    /**
+     * Results of the checks of this cluster
+     */
+    @Getter
+    private final CheckHistory history = new CheckHistory();
+
+    /**
+     * Name of each restored metric mapped to the time in milliseconds when its value was measured, until the metric is updated
+     */
+    private final Map<String, Long> restored = new ConcurrentHashMap<>();
+
+    public Cluster(Kubeconfig kubeconfig, String context, MeterRegistry registry) {
+        Config config = Config.fromKubeconfig(context, kubeconfig.getContents(), null);
+        this.client = kubeconfig.getTransport().createOpenShiftClient(config);
+        this.kubeconfig = kubeconfig;
+        this.context = context;
 
-        this.deleted = false;
         this.registry = registry;
+        this.metrics = new MetricStore(registry, Tags.of("API", client.getOpenshiftUrl().toString()));
     }
 
     /**
-     * Set the cluster delete flag to true and remove all Meters associated with the cluster. <br/>
-     * The delete flag set to true should prevent any update or creation of a new metric.
+     * Replace the client by a new one created from the current contents of the kubeconfig. <br/>
+     * The metrics are kept, including their API tag with the original URL. Checks already running keep using the previous client,
+     * the node watcher is restarted with the new client if it was watching.
      */
-    public synchronized void close() {
-        this.deleted = true;
+    void updateClient() {
+        Config config = Config.fromKubeconfig(context, kubeconfig.getContents(), null);
+        OpenShiftClient updated = kubeconfig.getTransport().createOpenShiftClient(config);
+
+        NodeWatcher watcher;
+        synchronized (this) {
+            client = updated;
+            watcher = nodeWatcher;
+        }
 
-        List<Meter> meters = registry
-            .getMeters()
-            .stream()
-            .filter(meter -> meter.getId().getTags().contains(Tag.of("API", client.getOpenshiftUrl().toString())))
-            .collect(Collectors.toList());
+        if (watcher != null && watcher.isWatching()) {
+            try {
+                watcher.start();
+            } catch (KubernetesClientException ex) {
+                // The node check starts the watcher again
+                log.error("Couldn't restart node watch on cluster " + getId() + ": " + ex.getMessage());
+            }
+        }
+    }
 
-        for (Meter meter : meters) {
-            this.registry.remove(meter);
+    /**
+     * Identifier of the cluster which is stable across restarts and doesn't reveal the kubeconfig URL.
+     */
+    public String getId() {
+        return context + "@" + UUID.nameUUIDFromBytes(kubeconfig.getUrl().getBytes(StandardCharsets.UTF_8)).toString().substring(0, 8);
+    }
+
+    /**
+     * Stop watching the nodes and remove all Meters associated with the cluster. <br/>
+     * No metric is updated or created after that.
+     */
+    public void close() {
+        metrics.close();
+
+        NodeWatcher watcher;
+        synchronized (this) {
+            watcher = nodeWatcher;
+        }
+
+        // The watcher updates the metrics while holding its own lock, so it can't be closed while holding the cluster's lock
+        if (watcher != null) {
+            watcher.close();
         }
     }
 
@@ -62,31 +132,100 @@ public class Cluster {
      * Each metric has default tag named API containing the clusters URL. <br/>
      * The boolean's true/false will be transformed to 1/0 respectively.
      */
-    public synchronized void updateMetric(String name, boolean value, String... additionalTags) {
+    public void updateMetric(String name, boolean value, String... additionalTags) {
         updateMetric(name, value ? 1 : 0, additionalTags);
     }
 
     /**
      * Update or create a new integer metric. <br/>
      * Each metric has default tag named API containing the clusters URL.
+     * Metrics with the same name but different additional tags are tracked separately. <br/>
+     * When the metric is created or its value changes, the kubeconfig's {@link ClusterListener} is notified.
      */
-    public synchronized void updateMetric(String name, int value, String... additionalTags) {
-        if (!deleted) {
-            if (!metrics.containsKey(name)) {
-                Tags tags = Tags.of("API", client.getOpenshiftUrl().toString()).and(additionalTags);
-                metrics.put(name, new AtomicInteger(value));
-                registry.gauge(name, tags, metrics.get(name));
-            } else {
-                metrics.get(name).set(value);
-            }
+    public void updateMetric(String name, int value, String... additionalTags) {
+        if (metrics.isClosed()) {
+            return;
         }
+
+        if (restored.remove(name) != null) {
+            metrics.set(METRIC_RESTORED_TIMESTAMP_NAME, 0, "metric", name);
+        }
+        setMetric(name, value, additionalTags);
+    }
+
+    /**
+     * Set the metric (without additional tags) to the value measured by a previous run of the application,
+     * unless the metric was already measured by this run. <br/>
+     * The metric stays restored until it is updated by {@link Cluster#updateMetric(String, int, String...)}.
+     *
+     * @param measuredAt time in milliseconds when the value was measured
+     */
+    public void restoreMetric(String name, int value, long measuredAt) {
+        if (metrics.isClosed() || hasMetric(name)) {
+            return;
+        }
+
+        restored.put(name, measuredAt);
+        metrics.set(METRIC_RESTORED_TIMESTAMP_NAME, (int) (measuredAt / 1000), "metric", name);
+        setMetric(name, value);
+    }
+
+    /**
+     * @return time in milliseconds when the restored value of the metric was measured, null if the metric wasn't restored or was updated since
+     */
+    public Long getRestoredAt(String name) {
+        return restored.get(name);
+    }
+
+    private void setMetric(String name, int value, String... additionalTags) {
+        Integer previous = metrics.set(name, value, additionalTags);
+        if (previous == null || previous != value) {
+            kubeconfig.getListener().metricChanged(this, name, previous, value);
+        }
+    }
+
+    /**
+     * Get a counter of the cluster, the counter has the default tag named API containing the clusters URL. <br/>
+     * The counter is removed together with the other metrics of the cluster.
+     */
+    public Counter counter(String name, String... additionalTags) {
+        return metrics.meter(name, tags -> Counter.builder(name).tags(tags).register(registry), additionalTags);
     }
 
-    public synchronized boolean hasMetric(String name) {
-        return metrics.containsKey(name);
+    /**
+     * Get a timer of the cluster publishing a percentile histogram, the timer has the default tag named API containing the clusters URL. <br/>
+     * The timer is removed together with the other metrics of the cluster.
+     */
+    public Timer timer(String name, String... additionalTags) {
+        return metrics.meter(name, tags -> Timer.builder(name).tags(tags).publishPercentileHistogram().register(registry), additionalTags);
+    }
+
+    /**
+     * Get the watcher tracking the nodes of this cluster, the watcher is created on the first call but not started.
+     */
+    public synchronized NodeWatcher getNodeWatcher() {
+        if (nodeWatcher == null) {
+            nodeWatcher = new NodeWatcher(this);
+        }
+        return nodeWatcher;
     }
 
-    public synchronized int getMetric(String name) {
-        return metrics.get(name).get();
+    /**
+     * @return true once the cluster was closed
+     */
+    public boolean isClosed() {
+        return metrics.isClosed();
+    }
+
+    public boolean hasMetric(String name) {
+        return metrics.get(name) != null;
+    }
+
+    /**
+     * @return value of the metric or null if it isn't set, the store can be cleared by {@link Cluster#close()} anytime,
+     * so read the value once instead of checking {@link Cluster#hasMetric(String)} first
+     */
+    public Integer getMetric(String name) {
+        return metrics.get(name);
     }
 }
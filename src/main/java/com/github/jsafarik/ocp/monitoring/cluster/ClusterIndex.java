@@ -0,0 +1,172 @@
+package com.github.jsafarik.ocp.monitoring.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable search index over cluster URLs and the names of their contexts. <br/>
+ * Substring queries use the postings of the query's n-grams (up to {@link ClusterIndex#GRAM} characters long), only the candidates
+ * containing all n-grams of the query are verified. Prefix queries use binary search over the sorted terms. <br/>
+ * Results are always sorted by URL and can be paginated by the last URL of the previous page.
+ */
+public class ClusterIndex {
+
+    static final int GRAM = 3;
+
+    /**
+     * Indexed URLs in sorted order, the position of the URL is its ID
+     */
+    private final String[] urls;
+
+    /**
+     * Terms (the URL and the context names) of each URL
+     */
+    private final String[][] terms;
+
+    /**
+     * N-gram mapped to the sorted IDs of URLs having a term containing it
+     */
+    private final Map<String, int[]> grams;
+
+    /**
+     * All terms in sorted order
+     */
+    private final String[] sortedTerms;
+
+    /**
+     * ID of the URL each of the sorted terms belongs to
+     */
+    private final int[] sortedTermIds;
+
+    /**
+     * @param clusters URLs mapped to the names of their contexts
+     */
+    public ClusterIndex(Map<String, ? extends Collection<String>> clusters) {
+        this.urls = clusters.keySet().stream().sorted().toArray(String[]::new);
+        this.terms = new String[urls.length][];
+
+        Map<String, List<Integer>> postings = new HashMap<>();
+        TreeMap<String, List<Integer>> termIds = new TreeMap<>();
+        for (int id = 0; id < urls.length; id++) {
+            Set<String> urlTerms = new HashSet<>(clusters.get(urls[id]));
+            urlTerms.add(urls[id]);
+            terms[id] = urlTerms.toArray(new String[0]);
+
+            Set<String> urlGrams = new HashSet<>();
+            for (String term : urlTerms) {
+                termIds.computeIfAbsent(term, k -> new ArrayList<>()).add(id);
+                for (int length = 1; length <= GRAM; length++) {
+                    for (int i = 0; i + length <= term.length(); i++) {
+                        urlGrams.add(term.substring(i, i + length));
+                    }
+                }
+            }
+            for (String gram : urlGrams) {
+                // IDs are added in ascending order, so the postings are sorted
+                postings.computeIfAbsent(gram, k -> new ArrayList<>()).add(id);
+            }
+        }
+
+        this.grams = new HashMap<>();
+        postings.forEach((gram, ids) -> grams.put(gram, ids.stream().mapToInt(Integer::intValue).toArray()));
+
+        List<String> sorted = new ArrayList<>();
+        List<Integer> sortedIds = new ArrayList<>();
+        termIds.forEach((term, ids) -> ids.forEach(id -> {
+            sorted.add(term);
+            sortedIds.add(id);
+        }));
+        this.sortedTerms = sorted.toArray(new String[0]);
+        this.sortedTermIds = sortedIds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public int size() {
+        return urls.length;
+    }
+
+    /**
+     * Find URLs whose URL or context name contains the query (or starts with it).
+     *
+     * @param prefix true to match only terms starting with the query
+     * @param after last URL of the previous page, null for the first page
+     * @param limit maximum number of returned URLs
+     * @return sorted URLs
+     */
+    public List<String> search(String query, boolean prefix, String after, int limit) {
+        BitSet matches = query.isEmpty() ? all() : prefix ? prefixMatches(query) : substringMatches(query);
+
+        int start = 0;
+        if (after != null) {
+            int position = Arrays.binarySearch(urls, after);
+            start = position >= 0 ? position + 1 : -position - 1;
+        }
+
+        List<String> result = new ArrayList<>();
+        for (int id = matches.nextSetBit(start); id >= 0 && result.size() < limit; id = matches.nextSetBit(id + 1)) {
+            result.add(urls[id]);
+        }
+        return result;
+    }
+
+    private BitSet all() {
+        BitSet all = new BitSet(urls.length);
+        all.set(0, urls.length);
+        return all;
+    }
+
+    private BitSet substringMatches(String query) {
+        BitSet matches = new BitSet(urls.length);
+        if (query.length() <= GRAM) {
+            // The query is an n-gram itself, its postings are the exact result
+            for (int id : grams.getOrDefault(query, new int[0])) {
+                matches.set(id);
+            }
+            return matches;
+        }
+
+        // Intersect the postings of all n-grams, starting with the shortest one
+        List<int[]> queryPostings = new ArrayList<>();
+        for (int i = 0; i + GRAM <= query.length(); i++) {
+            int[] ids = grams.get(query.substring(i, i + GRAM));
+            if (ids == null) {
+                return matches;
+            }
+            queryPostings.add(ids);
+        }
+        queryPostings.sort(Comparator.comparingInt(ids -> ids.length));
+
+        for (int id : queryPostings.get(0)) {
+            boolean candidate = true;
+            for (int i = 1; i < queryPostings.size() && candidate; i++) {
+                candidate = Arrays.binarySearch(queryPostings.get(i), id) >= 0;
+            }
+            if (candidate && Arrays.stream(terms[id]).anyMatch(term -> term.contains(query))) {
+                matches.set(id);
+            }
+        }
+        return matches;
+    }
+
+    private BitSet prefixMatches(String query) {
+        BitSet matches = new BitSet(urls.length);
+        int position = Arrays.binarySearch(sortedTerms, query);
+        int start = position >= 0 ? position : -position - 1;
+        // Find the first occurrence of an equal term
+        while (start > 0 && sortedTerms[start - 1].equals(query)) {
+            start--;
+        }
+        for (int i = start; i < sortedTerms.length && sortedTerms[i].startsWith(query); i++) {
+            matches.set(sortedTermIds[i]);
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,35 @@
+package com.github.jsafarik.ocp.monitoring.cluster;
+
+/**
+ * Listener notified about changes of the tracked clusters, registered using {@link Manager#addListener(ClusterListener)}.
+ */
+public interface ClusterListener {
+
+    /**
+     * Called when a new cluster starts being tracked.
+     */
+    default void clusterAdded(Cluster cluster) {
+    }
+
+    /**
+     * Called when a cluster is no longer tracked, after the cluster was closed.
+     */
+    default void clusterRemoved(Cluster cluster) {
+    }
+
+    /**
+     * Called when a cluster got a new client because the entries of its context in the kubeconfig changed.
+     */
+    default void clusterUpdated(Cluster cluster) {
+    }
+
+    /**
+     * Called when a metric of the cluster is created or changes its value.
+     *
+     * @param name name of the metric
+     * @param previous previous value of the metric, null if the metric was just created
+     * @param value new value of the metric
+     */
+    default void metricChanged(Cluster cluster, String name, Integer previous, int value) {
+    }
+}
@@ -1,36 +1,111 @@
 package com.github.jsafarik.ocp.monitoring.cluster;
 
+import com.github.jsafarik.ocp.monitoring.util.http.HttpTransport;
 import com.github.jsafarik.ocp.monitoring.util.http.HttpUtils;
+import com.github.jsafarik.ocp.monitoring.util.http.Request;
+import com.github.jsafarik.ocp.monitoring.util.http.Response;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+import io.fabric8.kubernetes.api.model.NamedAuthInfo;
+import io.fabric8.kubernetes.api.model.NamedCluster;
+import io.fabric8.kubernetes.api.model.NamedContext;
+import io.fabric8.kubernetes.client.utils.Serialization;
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Getter;
+import lombok.extern.jbosslog.JBossLog;
+import okhttp3.Headers;
 
 /**
- * Class representing each kubeconfig tracked by this monitoring app
+ * Class representing each kubeconfig tracked by this monitoring app <br/>
+ * The contents are fetched by conditional requests (or read from a local file, see {@link KubeconfigSources}) and identified by their hash,
+ * so unchanged contents don't have to be processed again. The kubeconfig is created without its contents, they are fetched by
+ * {@link Kubeconfig#updateContents()}. <br/>
+ * Each fetch is recorded in the {@link Kubeconfig#METRIC_FETCH_DURATION_NAME} timer (tagged by the result of the fetch) and
+ * the {@link Kubeconfig#METRIC_FETCH_BYTES_NAME} summary, each change of the contents is counted in {@link Kubeconfig#METRIC_CHANGES_NAME}.
  */
+@JBossLog
 public class Kubeconfig {
 
+    public static final String METRIC_FETCH_DURATION_NAME = "kubeconfig.fetch.duration";
+    public static final String METRIC_FETCH_BYTES_NAME = "kubeconfig.fetch.bytes";
+    public static final String METRIC_CHANGES_NAME = "kubeconfig.changes";
+
     @Getter
     private String url;
 
+    /**
+     * Local file the contents are read from, null if the contents are fetched over HTTP
+     */
+    @Getter
+    private final Path file;
+
     @Getter
-    private String contents;
+    private volatile String contents;
+
+    /**
+     * SHA-256 hash of the contents
+     */
+    private String contentsHash;
+
+    private String etag;
+
+    private String lastModified;
+
+    /**
+     * Hash of the contents and the context filters the clusters were last reconciled with
+     */
+    private String reconciled;
 
     private Map<String, Cluster> clusters;
 
+    /**
+     * Context name mapped to the fingerprint of the entries its cluster was created from, see {@link Kubeconfig#reconcile}
+     */
+    private final Map<String, String> fingerprints = new HashMap<>();
+
     private MeterRegistry registry;
 
-    public Kubeconfig(String url, MeterRegistry registry) {
+    private HttpTransport transport;
+
+    private ClusterListener listener;
+
+    public Kubeconfig(String url, MeterRegistry registry, HttpTransport transport, ClusterListener listener) {
         this.clusters = Collections.synchronizedMap(new HashMap<>());
         this.url = url;
         this.registry = registry;
-        updateContents();
+        this.transport = transport;
+        this.listener = listener;
+        this.file = KubeconfigSources.isFile(url) ? KubeconfigSources.toPath(url) : null;
+    }
+
+    /**
+     * Transport shared by the clients of this kubeconfig's clusters.
+     */
+    HttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Listener notified about changes of this kubeconfig's clusters.
+     */
+    ClusterListener getListener() {
+        return listener;
     }
 
     /**
@@ -44,32 +119,250 @@ public class Kubeconfig {
     }
 
     /**
-     * Fetch and update the currently saved content of the provided kubeconfig.
+     * Fetch and update the currently saved content of the provided kubeconfig and wait for the result. <br/>
+     * See {@link Kubeconfig#updateContentsAsync()}.
+     *
+     * @return true if the contents changed
+     */
+    public boolean updateContents() {
+        return updateContentsAsync().join();
+    }
+
+    /**
+     * Fetch and update the currently saved content of the provided kubeconfig. <br/>
+     * The request is conditional, when the server reports the contents unchanged or the fetch fails, the saved contents are kept.
+     * The kubeconfig isn't locked during the request and no thread waits for the response. <br/>
+     * A local file is read only when its modification time or size changed since the last read.
+     *
+     * @return future completed with true if the contents changed, it always completes normally
+     */
+    public CompletableFuture<Boolean> updateContentsAsync() {
+        if (file != null) {
+            return CompletableFuture.completedFuture(readFile());
+        }
+
+        Headers.Builder headers = new Headers.Builder();
+        synchronized (this) {
+            if (etag != null) {
+                headers.add("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                headers.add("If-Modified-Since", lastModified);
+            }
+        }
+
+        long start = System.nanoTime();
+        return HttpUtils.doRequestAsync(new Request("GET", url, headers.build(), null))
+            .thenApply(response -> update(response, Duration.ofNanos(System.nanoTime() - start)));
+    }
+
+    private boolean update(Response response, Duration duration) {
+        String result;
+        boolean changed = false;
+        synchronized (this) {
+            if (response.getCode() == 304) {
+                result = "not_modified";
+            } else if (response.getCode() == 200 && response.getBody() != null) {
+                etag = response.getHeaders().get("ETag");
+                lastModified = response.getHeaders().get("Last-Modified");
+
+                changed = store(response.getBody().getBytes(StandardCharsets.UTF_8));
+                result = changed ? "changed" : "unchanged";
+            } else {
+                log.error("Couldn't fetch kubeconfig " + url + " (" + response.getCode() + ")" + (contents != null ? ", keeping the previous contents" : ""));
+                result = "failed";
+            }
+        }
+
+        registry.timer(METRIC_FETCH_DURATION_NAME, "kubeconfig", url, "result", result).record(duration);
+        return changed;
+    }
+
+    private boolean readFile() {
+        long start = System.nanoTime();
+        String result;
+        boolean changed = false;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            // Used the same way as the Last-Modified header of the HTTP kubeconfigs
+            String modified = attributes.lastModifiedTime() + "/" + attributes.size();
+            synchronized (this) {
+                if (modified.equals(lastModified)) {
+                    result = "not_modified";
+                } else {
+                    byte[] bytes = Files.readAllBytes(file);
+                    lastModified = modified;
+                    changed = store(bytes);
+                    result = changed ? "changed" : "unchanged";
+                }
+            }
+        } catch (IOException ex) {
+            log.error("Couldn't read kubeconfig " + url + ": " + ex.getMessage() + (contents != null ? ", keeping the previous contents" : ""));
+            result = "failed";
+        }
+
+        registry.timer(METRIC_FETCH_DURATION_NAME, "kubeconfig", url, "result", result).record(Duration.ofNanos(System.nanoTime() - start));
+        return changed;
+    }
+
+    /**
+     * Save the fetched contents if they differ from the saved ones, has to be called with the kubeconfig locked.
+     *
+     * @return true if the contents changed
+     */
+    private boolean store(byte[] bytes) {
+        registry.summary(METRIC_FETCH_BYTES_NAME, "kubeconfig", url).record(bytes.length);
+
+        String hash = hash(bytes);
+        if (hash.equals(contentsHash)) {
+            return false;
+        }
+        contents = new String(bytes, StandardCharsets.UTF_8);
+        contentsHash = hash;
+        registry.counter(METRIC_CHANGES_NAME, "kubeconfig", url).increment();
+        return true;
+    }
+
+    /**
+     * @return true if the clusters weren't reconciled with the current contents and the given context filters yet
+     */
+    public synchronized boolean needsReconciliation(List<String> filters) {
+        return contentsHash != null && !(contentsHash + filters).equals(reconciled);
+    }
+
+    /**
+     * Remember that the clusters were reconciled with the current contents and the given context filters.
      */
-    public void updateContents() {
-        this.contents = HttpUtils.doRequest("GET", url, null, null).getBody();
+    public synchronized void reconciled(List<String> filters) {
+        reconciled = contentsHash + filters;
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
     }
 
     /**
      * Get cluster saved with the given context name. <br/>
      * If such cluster is not in the map, new cluster entry will be created.
      */
-    public synchronized Cluster getCluster(String context) {
-        if (clusters.containsKey(context)) {
-            return clusters.get(context);
+    public Cluster getCluster(String context) {
+        Cluster cluster;
+        synchronized (this) {
+            if (clusters.containsKey(context)) {
+                return clusters.get(context);
+            }
+
+            cluster = new Cluster(this, context, registry);
+            clusters.put(context, cluster);
         }
 
-        Cluster cluster = new Cluster(contents, context, registry);
-        clusters.put(context, cluster);
+        listener.clusterAdded(cluster);
         return cluster;
     }
 
     /**
-     * Close all clusters not in the provided list and remove them from the internal map. <br/>
-     * This will remove all the metrics connected with the removed clusters. <br/>
+     * Get cluster saved with the given context name without creating it.
+     *
+     * @return the cluster or null if there is no such cluster
+     */
+    public synchronized Cluster findCluster(String context) {
+        return clusters.get(context);
+    }
+
+    /**
+     * Reconcile the clusters with the contexts parsed from the contents. <br/>
+     * Only the added, removed and changed contexts are touched: clusters of the removed contexts are closed, clusters of the new
+     * contexts are created and clusters of the contexts whose context, cluster or user entry changed get a new client
+     * (see {@link Cluster#updateClient()}), keeping their metrics. The listener is notified about each of these changes.
+     *
+     * @param config the parsed contents
+     * @param contexts contexts to track, e.g. the contexts matching the context filters
+     */
+    public void reconcile(io.fabric8.kubernetes.api.model.Config config, List<NamedContext> contexts) {
+        Map<String, NamedCluster> clusterEntries = new HashMap<>();
+        if (config.getClusters() != null) {
+            config.getClusters().forEach(cluster -> clusterEntries.put(cluster.getName(), cluster));
+        }
+        Map<String, NamedAuthInfo> userEntries = new HashMap<>();
+        if (config.getUsers() != null) {
+            config.getUsers().forEach(user -> userEntries.put(user.getName(), user));
+        }
+
+        Map<String, String> wanted = new LinkedHashMap<>();
+        for (NamedContext context : contexts) {
+            wanted.put(context.getName(), fingerprint(context, clusterEntries, userEntries));
+        }
+
+        List<Cluster> removed = new ArrayList<>();
+        List<Cluster> changed = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        synchronized (this) {
+            for (String context : List.copyOf(clusters.keySet())) {
+                String fingerprint = wanted.get(context);
+                if (fingerprint == null) {
+                    removed.add(clusters.remove(context));
+                    fingerprints.remove(context);
+                } else {
+                    String previous = fingerprints.put(context, fingerprint);
+                    // A cluster without a fingerprint was created from the current contents outside of the reconciliation
+                    if (previous != null && !previous.equals(fingerprint)) {
+                        changed.add(clusters.get(context));
+                    }
+                }
+            }
+            wanted.keySet().stream().filter(context -> !clusters.containsKey(context)).forEach(added::add);
+        }
+
+        for (Cluster cluster : removed) {
+            cluster.close();
+            listener.clusterRemoved(cluster);
+        }
+        for (Cluster cluster : changed) {
+            log.info("Context " + cluster.getContext() + " of kubeconfig " + url + " changed, replacing the client");
+            cluster.updateClient();
+            listener.clusterUpdated(cluster);
+        }
+        for (String context : added) {
+            getCluster(context);
+            synchronized (this) {
+                fingerprints.put(context, wanted.get(context));
+            }
+        }
+        log.debug("Kubeconfig " + url + " reconciled: " + added.size() + " added, " + changed.size() + " changed, " + removed.size() + " removed");
+    }
+
+    /**
+     * Close all clusters and notify the listener about their removal, used when the kubeconfig is no longer tracked.
+     */
+    public void close() {
+        List<Cluster> removed;
+        synchronized (this) {
+            removed = new ArrayList<>(clusters.values());
+            clusters.clear();
+            fingerprints.clear();
+            reconciled = null;
+        }
+
+        for (Cluster cluster : removed) {
+            cluster.close();
+            listener.clusterRemoved(cluster);
+        }
+    }
+
+    /**
+     * Hash of the context entry together with the cluster and user entries it refers to, changes whenever the client created
+     * for the context would change.
      */
-    public synchronized void retainClusters(List<Cluster> clusters) {
-        this.clusters.values().stream().filter(cluster -> !clusters.contains(cluster)).forEach(Cluster::close);
-        this.clusters.values().retainAll(clusters);
+    private static String fingerprint(NamedContext context, Map<String, NamedCluster> clusterEntries, Map<String, NamedAuthInfo> userEntries) {
+        String clusterName = context.getContext() == null ? null : context.getContext().getCluster();
+        String userName = context.getContext() == null ? null : context.getContext().getUser();
+        String entries = Serialization.asJson(context) + "\n"
+            + Serialization.asJson(clusterName == null ? null : clusterEntries.get(clusterName)) + "\n"
+            + Serialization.asJson(userName == null ? null : userEntries.get(userName));
+        return hash(entries.getBytes(StandardCharsets.UTF_8));
     }
 }
@@ -0,0 +1,110 @@
+package com.github.jsafarik.ocp.monitoring.cluster;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import lombok.extern.jbosslog.JBossLog;
+
+/**
+ * Kubeconfig sources given in the configuration <br/>
+ * A source is either an HTTP(S) URL or a file:// URL. A file:// URL of a directory stands for all files directly in the directory
+ * (except the hidden ones), each of them is tracked as a separate kubeconfig with the context filters of the directory.
+ * Local sources are watched by {@link KubeconfigWatcher}.
+ */
+@JBossLog
+public class KubeconfigSources {
+
+    private KubeconfigSources() {
+    }
+
+    public static boolean isFile(String url) {
+        return url.regionMatches(true, 0, "file:", 0, "file:".length());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the URL isn't a valid absolute file URL
+     */
+    public static Path toPath(String url) {
+        return Path.of(URI.create(url));
+    }
+
+    /**
+     * Replace the directory sources by the files in them. <br/>
+     * A source whose URL is invalid is skipped. A directory which can't be listed keeps the kubeconfigs expanded from it before,
+     * so a failure of one directory doesn't remove its clusters.
+     *
+     * @param sources kubeconfig sources mapped to their context filters
+     * @param known URLs of the currently tracked kubeconfigs
+     * @return kubeconfig URLs mapped to their context filters
+     */
+    public static Map<String, List<String>> expand(Map<String, List<String>> sources, Collection<String> known) {
+        Map<String, List<String>> expanded = new LinkedHashMap<>();
+        sources.forEach((url, filters) -> {
+            if (!isFile(url)) {
+                expanded.put(url, filters);
+                return;
+            }
+
+            Path path;
+            try {
+                path = toPath(url);
+            } catch (IllegalArgumentException ex) {
+                log.error("Invalid kubeconfig URL " + url + ": " + ex.getMessage());
+                return;
+            }
+            if (!Files.isDirectory(path)) {
+                expanded.put(url, filters);
+                return;
+            }
+
+            try (Stream<Path> files = Files.list(path)) {
+                files.filter(file -> !file.getFileName().toString().startsWith(".") && Files.isRegularFile(file))
+                    .sorted()
+                    .forEach(file -> expanded.put(file.toUri().toString(), filters));
+            } catch (IOException ex) {
+                String prefix = path.toUri().toString();
+                log.error("Couldn't list kubeconfig directory " + url + ", keeping its kubeconfigs: " + ex.getMessage());
+                known.stream().filter(kubeconfig -> kubeconfig.startsWith(prefix)).forEach(kubeconfig -> expanded.put(kubeconfig, filters));
+            }
+        });
+        return expanded;
+    }
+
+    /**
+     * Get the directories to watch for changes of the local sources, the parent directory of each file source
+     * and each directory source itself.
+     *
+     * @return directories mapped to the names of the watched files in them, null if all files in the directory are watched
+     */
+    public static Map<Path, Set<String>> watchedDirectories(Collection<String> sources) {
+        Map<Path, Set<String>> directories = new HashMap<>();
+        for (String url : sources.stream().filter(KubeconfigSources::isFile).collect(Collectors.toList())) {
+            Path path;
+            try {
+                path = toPath(url);
+            } catch (IllegalArgumentException ex) {
+                continue;
+            }
+
+            if (Files.isDirectory(path)) {
+                directories.put(path, null);
+            } else if (path.getParent() != null && !directories.containsKey(path.getParent())) {
+                directories.put(path.getParent(), new HashSet<>(Set.of(path.getFileName().toString())));
+            } else if (path.getParent() != null && directories.get(path.getParent()) != null) {
+                directories.get(path.getParent()).add(path.getFileName().toString());
+            }
+        }
+        return directories;
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.jsafarik.ocp.monitoring.cluster;
+
+import com.github.jsafarik.ocp.monitoring.config.Configuration;
+import com.github.jsafarik.ocp.monitoring.config.ConfigurationListener;
+import com.github.jsafarik.ocp.monitoring.config.ConfigurationSnapshot;
+import com.github.jsafarik.ocp.monitoring.util.DirectoryWatcher;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.quarkus.runtime.StartupEvent;
+import lombok.extern.jbosslog.JBossLog;
+
+/**
+ * Watches the local kubeconfig sources (see {@link KubeconfigSources}) and notifies the listeners whenever any of them changes,
+ * so the local kubeconfigs are updated right away instead of waiting for the next poll. <br/>
+ * The directories are watched rather than the files, so a file replaced by a rename (or a Kubernetes volume updated
+ * by swapping its hidden "..data" link) is noticed too, see {@link DirectoryWatcher}. The watched directories follow the configuration reloads.
+ */
+@ApplicationScoped
+@JBossLog
+public class KubeconfigWatcher implements ConfigurationListener {
+
+    private final Configuration configuration;
+
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Watched directories mapped to the names of the watched files in them, null value if all files are watched
+     */
+    private volatile Map<Path, Set<String>> directories = Map.of();
+
+    private DirectoryWatcher watcher;
+
+    public KubeconfigWatcher(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    void start(@Observes StartupEvent event) {
+        configuration.addListener(this);
+        watch(configuration.getKubeconfigsWithFilters().keySet());
+    }
+
+    @PreDestroy
+    synchronized void stop() {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    /**
+     * Register listener notified when a local kubeconfig source changes.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void configurationChanged(ConfigurationSnapshot previous, ConfigurationSnapshot current, Set<String> changed) {
+        watch(current.getKubeconfigsWithFilters().keySet());
+    }
+
+    /**
+     * Watch the directories of the given sources and stop watching the directories of other sources.
+     */
+    private synchronized void watch(Collection<String> sources) {
+        Map<Path, Set<String>> watched = KubeconfigSources.watchedDirectories(sources);
+        if (watched.isEmpty() && watcher == null) {
+            return;
+        }
+
+        if (watcher == null) {
+            try {
+                watcher = new DirectoryWatcher("kubeconfig-watch", this::isRelevant, this::notifyListeners);
+            } catch (IOException ex) {
+                log.error("Couldn't watch local kubeconfigs, they are updated only periodically: " + ex.getMessage());
+                return;
+            }
+        }
+
+        directories = watched;
+        watcher.retain(watched.keySet());
+        for (Path directory : watched.keySet()) {
+            if (watcher.isWatching(directory)) {
+                continue;
+            }
+            try {
+                watcher.watch(directory);
+                log.debug("Watching kubeconfig directory " + directory);
+            } catch (IOException ex) {
+                log.error("Couldn't watch kubeconfig directory " + directory + ", it is updated only periodically: " + ex.getMessage());
+            }
+        }
+    }
+
+    private boolean isRelevant(Path directory, String name) {
+        // Null for a directory source, all its files are relevant
+        Set<String> names = directories.getOrDefault(directory, Set.of());
+        return names == null || names.contains(name);
+    }
+
+    private void notifyListeners() {
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException ex) {
+                log.error("Kubeconfig watch listener failed: " + ex.getMessage(), ex);
+            }
+        }
+    }
+}
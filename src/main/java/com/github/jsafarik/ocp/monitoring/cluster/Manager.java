@@ -2,33 +2,92 @@ package com.github.jsafarik.ocp.monitoring.cluster;
 
 import com.github.jsafarik.ocp.monitoring.job.impl.AccessibilityJob;
 import com.github.jsafarik.ocp.monitoring.job.impl.DeployCheckJob;
+import com.github.jsafarik.ocp.monitoring.job.impl.UpdateKubeconfigsJob;
+import com.github.jsafarik.ocp.monitoring.util.http.HttpTransport;
 
 import javax.enterprise.context.ApplicationScoped;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.jbosslog.JBossLog;
 
 /**
- * The manager is tracking all kubeconfigs provided through the application's configuration
+ * The manager is tracking all kubeconfigs provided through the application's configuration <br/>
+ * The set of working clusters is kept as an immutable snapshot, republished whenever the accessibility or working metric
+ * of any cluster changes or a cluster is removed, together with a {@link ClusterIndex} used to search in it and a version identifying it. <br/>
+ * The kubeconfigs are created without their contents, which are fetched by {@link UpdateKubeconfigsJob} without holding any lock of the manager.
  */
 @ApplicationScoped
+@JBossLog
 public class Manager {
 
     private Map<String, Kubeconfig> kubeconfigs;
 
     private MeterRegistry registry;
 
-    public Manager(MeterRegistry registry) {
-        this.kubeconfigs = Collections.synchronizedMap(new HashMap<>());
+    private HttpTransport transport;
+
+    private final List<ClusterListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Working clusters mapped to their URL, the source of the snapshot
+     */
+    private final Map<Cluster, String> working = new HashMap<>();
+
+    private volatile WorkingSnapshot workingSnapshot = WorkingSnapshot.EMPTY;
+
+    /**
+     * Forwards the notifications of all kubeconfigs to the registered listeners
+     */
+    private final ClusterListener dispatcher = new ClusterListener() {
+        @Override
+        public void clusterAdded(Cluster cluster) {
+            listeners.forEach(listener -> listener.clusterAdded(cluster));
+        }
+
+        @Override
+        public void clusterRemoved(Cluster cluster) {
+            updateWorking(cluster);
+            listeners.forEach(listener -> listener.clusterRemoved(cluster));
+        }
+
+        @Override
+        public void clusterUpdated(Cluster cluster) {
+            // The URL of the cluster may have changed
+            updateWorking(cluster);
+            listeners.forEach(listener -> listener.clusterUpdated(cluster));
+        }
+
+        @Override
+        public void metricChanged(Cluster cluster, String name, Integer previous, int value) {
+            if (DeployCheckJob.METRIC_WORKING_NAME.equals(name) || AccessibilityJob.METRIC_ACCESSIBILITY_NAME.equals(name)) {
+                updateWorking(cluster);
+            }
+            listeners.forEach(listener -> listener.metricChanged(cluster, name, previous, value));
+        }
+    };
+
+    public Manager(MeterRegistry registry, HttpTransport transport) {
+        this.kubeconfigs = new ConcurrentHashMap<>();
         this.registry = registry;
+        this.transport = transport;
+    }
+
+    /**
+     * Register listener notified about clusters being added, removed or changing their metrics in any kubeconfig.
+     */
+    public void addListener(ClusterListener listener) {
+        listeners.add(listener);
     }
 
     /**
@@ -37,7 +96,7 @@ public class Manager {
      * but the objects inside are not copied. <br/>
      * This means that changes to the list itself will not be propagated to the Manager Map, but changes to the Kubeconfig objects will.
      */
-    public synchronized List<Kubeconfig> getKubeconfigs() {
+    public List<Kubeconfig> getKubeconfigs() {
         return new ArrayList<>(kubeconfigs.values());
     }
 
@@ -45,34 +104,78 @@ public class Manager {
      * Get kubeconfig saved with the given URL. <br/>
      * If such kubeconfig is not in the map, new kubeconfig entry will be created.
      */
-    public synchronized Kubeconfig getKubeconfig(String url) {
-        if (kubeconfigs.containsKey(url)) {
-            return kubeconfigs.get(url);
+    public Kubeconfig getKubeconfig(String url) {
+        // Creating the kubeconfig doesn't fetch it, so nothing waits for the network here
+        return kubeconfigs.computeIfAbsent(url, k -> new Kubeconfig(url, registry, transport, dispatcher));
+    }
+
+    /**
+     * Stop tracking the kubeconfigs whose URL is not in the given collection, closing all their clusters.
+     */
+    public void retainKubeconfigs(Collection<String> urls) {
+        for (String url : List.copyOf(kubeconfigs.keySet())) {
+            if (urls.contains(url)) {
+                continue;
+            }
+            Kubeconfig kubeconfig = kubeconfigs.remove(url);
+            if (kubeconfig != null) {
+                log.info("Kubeconfig " + url + " is no longer configured or no longer exists, removing its clusters");
+                kubeconfig.close();
+            }
         }
+    }
+
+    /**
+     * Find the cluster created from the given context of the kubeconfig saved with the given URL.
+     *
+     * @return the cluster or null if it is not tracked
+     */
+    public Cluster findCluster(String kubeconfigUrl, String context) {
+        Kubeconfig kubeconfig = kubeconfigs.get(kubeconfigUrl);
+        return kubeconfig == null ? null : kubeconfig.findCluster(context);
+    }
+
+    /**
+     * Get all URLs of clusters that have their WORKING metric and ACCESSIBILITY metric set to 1. <br/>
+     * The returned set is an immutable snapshot, it doesn't take any lock.
+     */
+    public Set<String> getWorkingClusters() {
+        return workingSnapshot.getClusters();
+    }
+
+    /**
+     * Get the index of the working clusters, searchable by their URLs and context names. <br/>
+     * The index is immutable and republished together with the snapshot of the working clusters.
+     */
+    public ClusterIndex getWorkingIndex() {
+        return workingSnapshot.getIndex();
+    }
 
-        Kubeconfig kubeconfig = new Kubeconfig(url, registry);
-        kubeconfigs.put(url, kubeconfig);
-        return kubeconfig;
+    /**
+     * Get the snapshot of the working clusters together with its index and version.
+     */
+    public WorkingSnapshot getWorkingSnapshot() {
+        return workingSnapshot;
     }
 
     /**
-     * Get all URLs of clusters that have their WORKING metric and ACCESSIBILITY metric set to 1.
+     * Add the cluster to the working clusters or remove it from them and republish the snapshot if it changed.
      */
-    public synchronized Set<String> getWorkingClusters() {
-        Set<String> clusters = new HashSet<>();
-        for (Kubeconfig kubeconfig : kubeconfigs.values()) {
-            clusters.addAll(
-                kubeconfig.getClusters()
-                    .stream()
-                    .filter(cluster -> cluster.hasMetric(DeployCheckJob.METRIC_WORKING_NAME) &&
-                        cluster.hasMetric(AccessibilityJob.METRIC_ACCESSIBILITY_NAME))
-                    .filter(
-                        cluster -> cluster.getMetric(DeployCheckJob.METRIC_WORKING_NAME) == 1 &&
-                            cluster.getMetric(AccessibilityJob.METRIC_ACCESSIBILITY_NAME) == 1
-                    ).map(cluster -> cluster.getClient().getOpenshiftUrl().toString())
-                    .collect(Collectors.toSet())
-            );
+    private void updateWorking(Cluster cluster) {
+        synchronized (working) {
+            boolean isWorking = !cluster.isClosed()
+                && Objects.equals(cluster.getMetric(DeployCheckJob.METRIC_WORKING_NAME), 1)
+                && Objects.equals(cluster.getMetric(AccessibilityJob.METRIC_ACCESSIBILITY_NAME), 1);
+
+            String url = cluster.getClient().getOpenshiftUrl().toString();
+            boolean changed = isWorking
+                ? !url.equals(working.put(cluster, url))
+                : working.remove(cluster) != null;
+            if (changed) {
+                Map<String, Set<String>> contexts = new HashMap<>();
+                working.forEach((c, u) -> contexts.computeIfAbsent(u, k -> new HashSet<>()).add(c.getContext()));
+                workingSnapshot = new WorkingSnapshot(workingSnapshot.getVersion() + 1, contexts);
+            }
         }
-        return clusters;
     }
 }
@@ -0,0 +1,147 @@
+package com.github.jsafarik.ocp.monitoring.cluster;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Meters of a single cluster. <br/>
+ * Updates and reads don't take any lock. The store keeps the ID of every meter it registered, so closing it removes exactly
+ * the cluster's meters without scanning the whole registry.
+ */
+class MetricStore {
+
+    private static final String[] NO_TAGS = new String[0];
+
+    private final MeterRegistry registry;
+
+    private final Tags tags;
+
+    private final Map<Key, AtomicInteger> gauges = new ConcurrentHashMap<>();
+
+    private final Map<Key, Meter> meters = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+
+    /**
+     * @param tags tags added to all meters of the store
+     */
+    MetricStore(MeterRegistry registry, Tags tags) {
+        this.registry = registry;
+        this.tags = tags;
+    }
+
+    /**
+     * Set the value of the gauge, registering the gauge if it doesn't exist yet.
+     *
+     * @return previous value of the gauge, null if the gauge was just registered or the store is closed
+     */
+    Integer set(String name, int value, String... additionalTags) {
+        if (closed) {
+            return null;
+        }
+
+        Key key = new Key(name, additionalTags);
+        AtomicInteger gauge = gauges.get(key);
+        if (gauge != null) {
+            return gauge.getAndSet(value);
+        }
+
+        AtomicInteger created = new AtomicInteger(value);
+        gauge = gauges.putIfAbsent(key, created);
+        if (gauge != null) {
+            return gauge.getAndSet(value);
+        }
+
+        register(key, k -> Gauge.builder(name, created, AtomicInteger::get).tags(tags.and(additionalTags)).register(registry));
+        return null;
+    }
+
+    /**
+     * @return value of the gauge without additional tags, null if there is no such gauge
+     */
+    Integer get(String name) {
+        AtomicInteger gauge = gauges.get(new Key(name, NO_TAGS));
+        return gauge == null ? null : gauge.get();
+    }
+
+    /**
+     * Get the meter with the name and additional tags, creating it with the factory if it doesn't exist yet. <br/>
+     * The factory gets the tags of the store combined with the additional tags.
+     */
+    @SuppressWarnings("unchecked")
+    <M extends Meter> M meter(String name, Function<Tags, M> factory, String... additionalTags) {
+        Key key = new Key(name, additionalTags);
+        Meter meter = meters.get(key);
+        if (meter == null) {
+            meter = register(key, k -> factory.apply(tags.and(additionalTags)));
+        }
+        return (M) meter;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Remove all meters of the store from the registry, no meter is registered after that.
+     */
+    void close() {
+        closed = true;
+        meters.values().forEach(meter -> registry.remove(meter.getId()));
+        meters.clear();
+        gauges.clear();
+    }
+
+    private Meter register(Key key, Function<Key, Meter> factory) {
+        Meter meter = meters.computeIfAbsent(key, factory);
+        if (closed) {
+            // Closed while registering, don't leave the meter behind
+            registry.remove(meter.getId());
+        }
+        return meter;
+    }
+
+    /**
+     * Name and additional tags of a meter, the hash is computed once per lookup
+     */
+    private static class Key {
+
+        private final String name;
+
+        private final String[] tags;
+
+        private final int hash;
+
+        Key(String name, String[] tags) {
+            this.name = name;
+            this.tags = tags;
+            this.hash = 31 * name.hashCode() + Arrays.hashCode(tags);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash && Objects.equals(name, key.name) && Arrays.equals(tags, key.tags);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.jsafarik.ocp.monitoring.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaim;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.openshift.api.model.BuildConfig;
+import io.fabric8.openshift.api.model.DeploymentConfig;
+import io.fabric8.openshift.api.model.ImageStream;
+import io.fabric8.openshift.api.model.Route;
+import io.fabric8.openshift.client.OpenShiftClient;
+import lombok.extern.jbosslog.JBossLog;
+
+/**
+ * Watch-backed local copy of the resources in a single namespace. <br/>
+ * Each resource type is listed once and then kept up to date by a watch, so all the lookups are answered from memory.
+ * The cache must be closed to stop the watches.
+ */
+@JBossLog
+public class NamespaceCache implements AutoCloseable {
+
+    private final String namespace;
+
+    private final Map<Class<? extends HasMetadata>, SharedIndexInformer<? extends HasMetadata>> informers = new HashMap<>();
+
+    /**
+     * Start watching the services, persistent volume claims, deployment configs, pods, routes, build configs and image streams
+     * in the given namespace. Blocks until the initial list of each type is loaded.
+     */
+    public NamespaceCache(OpenShiftClient client, String namespace) {
+        this.namespace = namespace;
+
+        try {
+            informers.put(Service.class, client.services().inNamespace(namespace).inform());
+            informers.put(PersistentVolumeClaim.class, client.persistentVolumeClaims().inNamespace(namespace).inform());
+            informers.put(DeploymentConfig.class, client.deploymentConfigs().inNamespace(namespace).inform());
+            informers.put(Pod.class, client.pods().inNamespace(namespace).inform());
+            informers.put(Route.class, client.routes().inNamespace(namespace).inform());
+            informers.put(BuildConfig.class, client.buildConfigs().inNamespace(namespace).inform());
+            informers.put(ImageStream.class, client.imageStreams().inNamespace(namespace).inform());
+        } catch (RuntimeException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Get all cached resources of the given type.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends HasMetadata> List<T> list(Class<T> type) {
+        SharedIndexInformer<T> informer = (SharedIndexInformer<T>) informers.get(type);
+        if (informer == null) {
+            throw new IllegalArgumentException("Resources of type " + type.getSimpleName() + " are not cached");
+        }
+        return new ArrayList<>(informer.getStore().list());
+    }
+
+    /**
+     * Check if the resource of the given type and name is present in the namespace.
+     */
+    public boolean contains(Class<? extends HasMetadata> type, String name) {
+        SharedIndexInformer<? extends HasMetadata> informer = informers.get(type);
+        if (informer == null) {
+            throw new IllegalArgumentException("Resources of type " + type.getSimpleName() + " are not cached");
+        }
+        return informer.getStore().getByKey(namespace + "/" + name) != null;
+    }
+
+    /**
+     * Get all cached resources of the given type having all the given labels.
+     */
+    public <T extends HasMetadata> List<T> withLabels(Class<T> type, Map<String, String> labels) {
+        List<T> matching = new ArrayList<>();
+        for (T resource : list(type)) {
+            Map<String, String> resourceLabels = resource.getMetadata().getLabels();
+            if (resourceLabels == null) {
+                resourceLabels = Collections.emptyMap();
+            }
+            if (resourceLabels.entrySet().containsAll(labels.entrySet())) {
+                matching.add(resource);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Stop all the watches.
+     */
+    @Override
+    public void close() {
+        for (SharedIndexInformer<? extends HasMetadata> informer : informers.values()) {
+            try {
+                informer.stop();
+            } catch (RuntimeException ex) {
+                log.error("Couldn't stop the " + informer.getApiTypeClass().getSimpleName() + " informer in namespace " + namespace);
+            }
+        }
+        informers.clear();
+    }
+}
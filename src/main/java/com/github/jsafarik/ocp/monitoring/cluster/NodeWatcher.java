@@ -0,0 +1,196 @@
+package com.github.jsafarik.ocp.monitoring.cluster;
+
+import com.github.jsafarik.ocp.monitoring.job.impl.NodeCheckJob;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.fabric8.kubernetes.api.model.Node;
+import io.fabric8.kubernetes.api.model.NodeCondition;
+import io.fabric8.kubernetes.api.model.NodeList;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.WatcherException;
+import lombok.extern.jbosslog.JBossLog;
+
+/**
+ * Keeps the node counts of a cluster up to date by watching its nodes. <br/>
+ * The nodes are listed once, after that only the watch events are processed. For each node only its ready state and
+ * the {@link NodeWatcher#CONDITIONS} are remembered, so the memory doesn't depend on the size of the node objects. <br/>
+ * Sets the {@link NodeCheckJob#METRIC_NODE_COUNT_NAME}, {@link NodeCheckJob#METRIC_READY_NODE_COUNT_NAME}
+ * and {@link NodeCheckJob#METRIC_NODE_CONDITION_COUNT_NAME} metrics whenever any of the counts changes.
+ */
+@JBossLog
+public class NodeWatcher implements Watcher<Node>, AutoCloseable {
+
+    /**
+     * Node conditions counted separately, each of them is reported when its status is "True"
+     */
+    public static final List<String> CONDITIONS = List.of("MemoryPressure", "DiskPressure", "PIDPressure", "NetworkUnavailable");
+
+    private static final int READY = 1;
+
+    private final Cluster cluster;
+
+    /**
+     * Node name mapped to a bit mask of its state, the lowest bit is the ready state followed by the {@link NodeWatcher#CONDITIONS}
+     */
+    private final Map<String, Integer> nodes = new HashMap<>();
+
+    /**
+     * Number of nodes having each bit of the state set
+     */
+    private final int[] counts = new int[CONDITIONS.size() + 1];
+
+    private Watch watch;
+
+    private volatile boolean watching;
+
+    private boolean closed;
+
+    NodeWatcher(Cluster cluster) {
+        this.cluster = cluster;
+    }
+
+    /**
+     * List all nodes, publish their counts and start watching for changes from the list's resource version.
+     *
+     * @throws KubernetesClientException when the nodes can't be listed or watched
+     */
+    public synchronized void start() {
+        if (closed) {
+            return;
+        }
+        stopWatch();
+
+        NodeList list = cluster.getClient().nodes().list();
+        nodes.clear();
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        for (Node node : list.getItems()) {
+            update(node.getMetadata().getName(), state(node));
+        }
+        publish();
+
+        watch = cluster.getClient().nodes().withResourceVersion(list.getMetadata().getResourceVersion()).watch(this);
+        watching = true;
+    }
+
+    /**
+     * @return true while the watch is open and the counts are being updated
+     */
+    public boolean isWatching() {
+        return watching;
+    }
+
+    @Override
+    public synchronized void eventReceived(Action action, Node node) {
+        if (closed) {
+            return;
+        }
+
+        String name = node.getMetadata().getName();
+        switch (action) {
+            case ADDED:
+            case MODIFIED:
+                if (update(name, state(node))) {
+                    publish();
+                }
+                break;
+            case DELETED:
+                if (update(name, null)) {
+                    publish();
+                }
+                break;
+            default:
+                log.warn("Unexpected node watch event " + action + " on cluster " + cluster.getClient().getOpenshiftUrl());
+        }
+    }
+
+    @Override
+    public void onClose(WatcherException cause) {
+        watching = false;
+
+        if (cause.isHttpGone()) {
+            // The resource version expired, list the nodes again to catch up with everything missed
+            log.info("Node watch expired on cluster " + cluster.getClient().getOpenshiftUrl() + ", resynchronizing");
+            try {
+                start();
+            } catch (KubernetesClientException ex) {
+                log.error("Couldn't resynchronize nodes on cluster " + cluster.getClient().getOpenshiftUrl() + ": " + ex.getMessage());
+            }
+        } else {
+            log.error("Node watch closed on cluster " + cluster.getClient().getOpenshiftUrl() + ": " + cause.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        stopWatch();
+    }
+
+    private void stopWatch() {
+        watching = false;
+        if (watch != null) {
+            watch.close();
+            watch = null;
+        }
+    }
+
+    /**
+     * Replace the remembered state of the node and adjust the counts.
+     *
+     * @param state new state of the node, null if the node was deleted
+     * @return true if any count changed
+     */
+    private boolean update(String name, Integer state) {
+        Integer previous = state == null ? nodes.remove(name) : nodes.put(name, state);
+        if (previous == null && state == null) {
+            return false;
+        }
+
+        int before = previous == null ? 0 : previous;
+        int after = state == null ? 0 : state;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += ((after >> i) & 1) - ((before >> i) & 1);
+        }
+        return previous == null || state == null || before != after;
+    }
+
+    private void publish() {
+        cluster.updateMetric(NodeCheckJob.METRIC_NODE_COUNT_NAME, nodes.size());
+        cluster.updateMetric(NodeCheckJob.METRIC_READY_NODE_COUNT_NAME, counts[0]);
+        for (int i = 0; i < CONDITIONS.size(); i++) {
+            cluster.updateMetric(NodeCheckJob.METRIC_NODE_CONDITION_COUNT_NAME, counts[i + 1], "condition", CONDITIONS.get(i));
+        }
+    }
+
+    /**
+     * Transform the node's conditions to the bit mask remembered for the node
+     */
+    private static int state(Node node) {
+        int state = 0;
+        if (node.getStatus() == null || node.getStatus().getConditions() == null) {
+            return state;
+        }
+
+        for (NodeCondition condition : node.getStatus().getConditions()) {
+            if (!Boolean.parseBoolean(condition.getStatus())) {
+                continue;
+            }
+            if ("ready".equals(condition.getType().toLowerCase())) {
+                state |= READY;
+            } else {
+                int index = CONDITIONS.indexOf(condition.getType());
+                if (index >= 0) {
+                    state |= READY << (index + 1);
+                }
+            }
+        }
+        return state;
+    }
+}
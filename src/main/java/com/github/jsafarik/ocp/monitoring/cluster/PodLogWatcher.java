@@ -0,0 +1,174 @@
+package com.github.jsafarik.ocp.monitoring.cluster;
+
+import com.github.jsafarik.ocp.monitoring.util.MarkerMatcher;
+
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.dsl.LogWatch;
+import io.fabric8.kubernetes.client.dsl.PodResource;
+import io.fabric8.openshift.client.OpenShiftClient;
+import lombok.Getter;
+import lombok.extern.jbosslog.JBossLog;
+
+/**
+ * Follows the log of a single pod and remembers which of the markers appeared in it. <br/>
+ * The log is streamed through the {@link MarkerMatcher} and never stored, so the memory doesn't depend on the size of the log.
+ * When the stream ends before the watcher is closed, {@link PodLogWatcher#ensureWatching()} follows the log again
+ * since the start of the previous stream, so nothing is missed and nothing old is downloaded again. <br/>
+ * The client doesn't tell when a followed stream ends (it never closes the given output stream), so a stream which hasn't
+ * received anything for {@link PodLogWatcher#IDLE_TIMEOUT} is considered ended too. Following a quiet log again is cheap,
+ * only the lines since the start of the previous stream are downloaded.
+ */
+@JBossLog
+public class PodLogWatcher implements AutoCloseable {
+
+    static final Duration IDLE_TIMEOUT = Duration.ofSeconds(10);
+
+    private final OpenShiftClient client;
+
+    private final String namespace;
+
+    @Getter
+    private final String pod;
+
+    private final MarkerMatcher matcher;
+
+    /**
+     * Bit mask of the markers found in the log so far
+     */
+    private final AtomicInteger matched = new AtomicInteger();
+
+    private LogWatch logWatch;
+
+    /**
+     * Receiver of the current stream, null when the log isn't being followed
+     */
+    private Sink sink;
+
+    /**
+     * Start of the current stream, null before the log was followed for the first time
+     */
+    private Instant streamStart;
+
+    private boolean closed;
+
+    public PodLogWatcher(OpenShiftClient client, String namespace, String pod, MarkerMatcher matcher) {
+        this.client = client;
+        this.namespace = namespace;
+        this.pod = pod;
+        this.matcher = matcher;
+    }
+
+    /**
+     * Start following the log unless it is already being followed.
+     *
+     * @return this watcher
+     * @throws KubernetesClientException when the log can't be followed
+     */
+    public synchronized PodLogWatcher ensureWatching() {
+        if (closed || (sink != null && !sink.hasEnded())) {
+            return this;
+        }
+        stopWatch();
+
+        PodResource<Pod> resource = client.pods().inNamespace(namespace).withName(pod);
+        Instant start = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        Sink next = new Sink();
+        if (streamStart == null) {
+            logWatch = resource.watchLog(next);
+        } else {
+            // One second of overlap, the markers already found are remembered anyway
+            logWatch = resource.sinceTime(streamStart.minusSeconds(1).toString()).watchLog(next);
+        }
+        sink = next;
+        streamStart = start;
+        return this;
+    }
+
+    /**
+     * @return true if the marker appeared in the log
+     */
+    public boolean hasMatched(String marker) {
+        return (matched.get() & matcher.bit(marker)) != 0;
+    }
+
+    /**
+     * @return true if all the markers appeared in the log
+     */
+    public boolean allMatched() {
+        return matched.get() == matcher.all();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        stopWatch();
+    }
+
+    private void stopWatch() {
+        sink = null;
+        if (logWatch != null) {
+            logWatch.close();
+            logWatch = null;
+        }
+    }
+
+    /**
+     * Receives the streamed log, written by a single thread of the client
+     */
+    private class Sink extends OutputStream {
+
+        private int state = matcher.initial();
+
+        private volatile boolean ended;
+
+        /**
+         * Time in nanoseconds when the sink was created or last received anything
+         */
+        private volatile long lastWrite = System.nanoTime();
+
+        boolean hasEnded() {
+            if (!ended && System.nanoTime() - lastWrite > IDLE_TIMEOUT.toNanos()) {
+                log.debug("Log stream of pod " + namespace + "/" + pod + " idle for " + IDLE_TIMEOUT.toSeconds() + "s, following it again");
+                ended = true;
+            }
+            return ended;
+        }
+
+        @Override
+        public void write(int b) {
+            lastWrite = System.nanoTime();
+            match((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            lastWrite = System.nanoTime();
+            for (int i = offset; i < offset + length; i++) {
+                match(bytes[i]);
+            }
+        }
+
+        private void match(byte b) {
+            state = matcher.next(state, b);
+            int found = matcher.matches(state);
+            if (found != 0) {
+                matched.accumulateAndGet(found, (previous, value) -> previous | value);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!ended) {
+                log.debug("Log stream of pod " + namespace + "/" + pod + " ended");
+            }
+            ended = true;
+        }
+    }
+}
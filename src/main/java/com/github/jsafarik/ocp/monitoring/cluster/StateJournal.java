@@ -0,0 +1,286 @@
+package com.github.jsafarik.ocp.monitoring.cluster;
+
+import com.github.jsafarik.ocp.monitoring.config.Configuration;
+import com.github.jsafarik.ocp.monitoring.job.impl.AccessibilityJob;
+import com.github.jsafarik.ocp.monitoring.job.impl.DeployCheckJob;
+import com.github.jsafarik.ocp.monitoring.job.impl.NodeCheckJob;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Priority;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.interceptor.Interceptor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import io.quarkus.runtime.StartupEvent;
+import lombok.extern.jbosslog.JBossLog;
+
+/**
+ * Persists the last known state of the clusters to {@link Configuration#getStateFile()}, so it survives a restart. <br/>
+ * Every change of the {@link StateJournal#METRICS} is appended to the file as a single line. Every {@link Configuration#getStateCheckpoint()}
+ * seconds the file is rewritten with only the latest value of each metric, which keeps the file compact. <br/>
+ * When a cluster is added, its metrics are restored from the values measured less than {@link Configuration#getStateMaxAge()} seconds ago
+ * (see {@link Cluster#restoreMetric(String, int, long)}), so the API isn't empty until all checks run again after a restart.
+ * Restored values are replaced as soon as the checks measure them again.
+ */
+@ApplicationScoped
+@JBossLog
+public class StateJournal implements ClusterListener {
+
+    /**
+     * Metrics persisted in the journal
+     */
+    static final List<String> METRICS = List.of(AccessibilityJob.METRIC_ACCESSIBILITY_NAME, DeployCheckJob.METRIC_WORKING_NAME,
+        NodeCheckJob.METRIC_NODE_COUNT_NAME, NodeCheckJob.METRIC_READY_NODE_COUNT_NAME);
+
+    /**
+     * Metric name of a record marking the removal of the cluster
+     */
+    private static final String REMOVED = "-";
+
+    private static final String SEPARATOR = "\t";
+
+    private final Manager manager;
+
+    /**
+     * The journal file, null when the state isn't persisted
+     */
+    private final Path file;
+
+    private final long maxAge;
+
+    private final int checkpointInterval;
+
+    /**
+     * Cluster ID mapped to the latest record of each of its metrics
+     */
+    private final Map<String, Map<String, Record>> records = new HashMap<>();
+
+    private Writer writer;
+
+    private ScheduledExecutorService timer;
+
+    public StateJournal(Manager manager, Configuration configuration) {
+        this.manager = manager;
+        this.file = configuration.getStateFile().isEmpty() ? null : Path.of(configuration.getStateFile());
+        this.maxAge = configuration.getStateMaxAge() * 1000L;
+        this.checkpointInterval = Math.max(1, configuration.getStateCheckpoint());
+    }
+
+    /**
+     * Load the journal before any cluster is added and start recording the changes.
+     */
+    public void start(@Observes @Priority(Interceptor.Priority.APPLICATION) StartupEvent event) {
+        if (file == null) {
+            return;
+        }
+
+        load();
+        checkpoint();
+        manager.addListener(this);
+
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "state-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::checkpoint, checkpointInterval, checkpointInterval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (timer == null) {
+            return;
+        }
+        timer.shutdownNow();
+        checkpoint();
+        synchronized (this) {
+            closeWriter();
+        }
+    }
+
+    @Override
+    public void clusterAdded(Cluster cluster) {
+        List<Record> restore;
+        synchronized (this) {
+            restore = new ArrayList<>(records.getOrDefault(cluster.getId(), Map.of()).values());
+        }
+
+        // Restore outside the lock, the restored metrics notify all listeners
+        long now = System.currentTimeMillis();
+        restore.stream()
+            .filter(record -> now - record.time < maxAge)
+            .forEach(record -> cluster.restoreMetric(record.metric, record.value, record.time));
+        if (!restore.isEmpty()) {
+            log.info("Cluster " + cluster.getId() + " restored from " + file);
+        }
+    }
+
+    @Override
+    public synchronized void clusterRemoved(Cluster cluster) {
+        records.remove(cluster.getId());
+        append(new Record(System.currentTimeMillis(), cluster.getId(), REMOVED, 0));
+    }
+
+    @Override
+    public synchronized void metricChanged(Cluster cluster, String name, Integer previous, int value) {
+        // Restored values are already in the journal with the time they were measured
+        if (!METRICS.contains(name) || cluster.getRestoredAt(name) != null) {
+            return;
+        }
+
+        Record record = new Record(System.currentTimeMillis(), cluster.getId(), name, value);
+        records.computeIfAbsent(record.cluster, k -> new HashMap<>()).put(name, record);
+        append(record);
+    }
+
+    private void append(Record record) {
+        try {
+            if (writer == null) {
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(record.toLine());
+            writer.flush();
+        } catch (IOException ex) {
+            log.error("Couldn't append to " + file + ": " + ex.getMessage());
+            closeWriter();
+        }
+    }
+
+    /**
+     * Read all records of the journal, the later records replace the earlier ones.
+     */
+    private synchronized void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Record record = Record.parse(line);
+                if (record == null) {
+                    // Most likely a line cut short by a crash
+                    skipped++;
+                } else if (REMOVED.equals(record.metric)) {
+                    records.remove(record.cluster);
+                } else {
+                    records.computeIfAbsent(record.cluster, k -> new HashMap<>()).put(record.metric, record);
+                }
+            }
+        } catch (IOException ex) {
+            log.error("Couldn't read " + file + ": " + ex.getMessage());
+        }
+        log.info("Loaded state of " + records.size() + " clusters from " + file + (skipped > 0 ? ", skipped " + skipped + " invalid lines" : ""));
+    }
+
+    /**
+     * Record the current values of the metrics of all clusters and rewrite the journal with the latest records only. <br/>
+     * Records of the clusters that are not tracked (yet) are kept until they are too old.
+     */
+    private synchronized void checkpoint() {
+        long now = System.currentTimeMillis();
+        for (Kubeconfig kubeconfig : manager.getKubeconfigs()) {
+            for (Cluster cluster : kubeconfig.getClusters()) {
+                for (String metric : METRICS) {
+                    Integer value = cluster.getMetric(metric);
+                    if (cluster.isClosed() || value == null) {
+                        continue;
+                    }
+                    Long restoredAt = cluster.getRestoredAt(metric);
+                    Record record = new Record(restoredAt == null ? now : restoredAt, cluster.getId(), metric, value);
+                    records.computeIfAbsent(record.cluster, k -> new HashMap<>()).put(metric, record);
+                }
+            }
+        }
+        records.values().forEach(metrics -> metrics.values().removeIf(record -> now - record.time >= maxAge));
+        records.values().removeIf(Map::isEmpty);
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (BufferedWriter compacted = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                for (Map<String, Record> metrics : records.values()) {
+                    for (Record record : metrics.values()) {
+                        compacted.write(record.toLine());
+                    }
+                }
+            }
+            closeWriter();
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            log.error("Couldn't rewrite " + file + ": " + ex.getMessage());
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException ex) {
+            log.debug("Couldn't close " + file + ": " + ex.getMessage());
+        }
+        writer = null;
+    }
+
+    /**
+     * Value of a metric of a cluster, persisted as a single line of tab separated values
+     */
+    private static class Record {
+
+        private final long time;
+
+        private final String cluster;
+
+        private final String metric;
+
+        private final int value;
+
+        Record(long time, String cluster, String metric, int value) {
+            this.time = time;
+            this.cluster = cluster;
+            this.metric = metric;
+            this.value = value;
+        }
+
+        String toLine() {
+            return time + SEPARATOR + cluster + SEPARATOR + metric + SEPARATOR + value + "\n";
+        }
+
+        /**
+         * @return the record or null if the line isn't a valid record
+         */
+        static Record parse(String line) {
+            String[] fields = line.split(SEPARATOR, -1);
+            if (fields.length != 4) {
+                return null;
+            }
+            try {
+                return new Record(Long.parseLong(fields[0]), fields[1], fields[2], Integer.parseInt(fields[3]));
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+    }
+}
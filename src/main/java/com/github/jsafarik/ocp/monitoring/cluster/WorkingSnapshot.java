@@ -0,0 +1,38 @@
+package com.github.jsafarik.ocp.monitoring.cluster;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.Getter;
+
+/**
+ * Immutable snapshot of the working clusters published by the {@link Manager}. <br/>
+ * Each published snapshot has a higher version than the previous one, so the version identifies the content of the snapshot.
+ */
+@Getter
+public class WorkingSnapshot {
+
+    static final WorkingSnapshot EMPTY = new WorkingSnapshot(0, Map.of());
+
+    private final long version;
+
+    /**
+     * URLs of the working clusters
+     */
+    private final Set<String> clusters;
+
+    /**
+     * Index of the working clusters by their URLs and context names
+     */
+    private final ClusterIndex index;
+
+    /**
+     * @param contexts URLs of the working clusters mapped to the names of their contexts
+     */
+    WorkingSnapshot(long version, Map<String, ? extends Collection<String>> contexts) {
+        this.version = version;
+        this.clusters = Set.copyOf(contexts.keySet());
+        this.index = new ClusterIndex(contexts);
+    }
+}
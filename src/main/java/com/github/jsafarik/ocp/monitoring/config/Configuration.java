@@ -2,33 +2,221 @@ package com.github.jsafarik.ocp.monitoring.config;
 
 import org.eclipse.microprofile.config.ConfigProvider;
 
+import com.github.jsafarik.ocp.monitoring.util.DirectoryWatcher;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 import lombok.extern.jbosslog.JBossLog;
 
+/**
+ * Configuration of the application. <br/>
+ * The configuration is parsed once into an immutable {@link ConfigurationSnapshot}, all getters read the current snapshot without
+ * any locking. The snapshot is rebuilt by {@link Configuration#reload()}, which is called whenever the file in
+ * {@link Configuration#CONFIG_FILE} changes. When a reload changes the configuration, the registered {@link ConfigurationListener}s
+ * are notified about the changed properties.
+ */
 @ApplicationScoped
 @JBossLog
 public class Configuration {
 
+    /**
+     * Properties file watched for changes, its properties override application.properties but not environment variables. <br/>
+     * Read only at startup, so it can't be set in the file itself.
+     */
+    private final Property CONFIG_FILE = new Property("monitoring.config.file", "");
+
     private final Property NAMESPACE = new Property("sample.app.namespace", "infra-test");
     private final Property KUBECONFIGS = new Property("monitoring.kubeconfig");
     private final Property CONTEXT_FILTER = new Property("monitoring.context.filters", "");
+    private final Property CHECK_THREADS = new Property("monitoring.check.threads", "20");
+    private final Property CHECK_KUBECONFIG_CONCURRENCY = new Property("monitoring.check.kubeconfig.concurrency", "5");
+    private final Property DEPLOY_CHECK_CONCURRENCY = new Property("monitoring.deploy.check.concurrency", "5");
+    private final Property INTERVAL_MIN_FACTOR = new Property("monitoring.interval.min.factor", "0.5");
+    private final Property INTERVAL_MAX_FACTOR = new Property("monitoring.interval.max.factor", "3");
+    private final Property HTTP_MAX_REQUESTS = new Property("monitoring.http.max.requests", "1024");
+    private final Property HTTP_MAX_REQUESTS_PER_HOST = new Property("monitoring.http.max.requests.per.host", "32");
+    private final Property HTTP_MAX_IDLE_CONNECTIONS = new Property("monitoring.http.max.idle.connections", "50");
+    private final Property HTTP_KEEP_ALIVE = new Property("monitoring.http.keep.alive", "300");
+    private final Property MANIFEST_TTL = new Property("monitoring.manifest.ttl", "3600");
+    private final Property MANIFEST_DIRECTORY = new Property("monitoring.manifest.directory", "");
+    private final Property EVENTS_BUFFER = new Property("monitoring.events.buffer", "1024");
+    private final Property STATE_FILE = new Property("monitoring.state.file", "");
+    private final Property STATE_MAX_AGE = new Property("monitoring.state.max.age", "86400");
+    private final Property STATE_CHECKPOINT = new Property("monitoring.state.checkpoint", "300");
+
+    private final List<ConfigurationListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The watched configuration file, null if there is none
+     */
+    private Path configFile;
+
+    /**
+     * Properties of the configuration file, only used while a snapshot is being built
+     */
+    private Properties fileProperties = new Properties();
+
+    private volatile ConfigurationSnapshot snapshot;
+
+    private DirectoryWatcher watcher;
+
+    /**
+     * Load the configuration, not in the constructor as the constructor is also called for the client proxy of the bean.
+     */
+    @PostConstruct
+    void init() {
+        String file = getProperty(CONFIG_FILE);
+        this.configFile = file.isEmpty() ? null : Path.of(file).toAbsolutePath();
+        this.snapshot = load();
+        log.info("Kubeconfigs: " + snapshot.getKubeconfigsWithFilters().keySet());
+
+        if (configFile != null) {
+            watch();
+        }
+    }
+
+    @PreDestroy
+    void stopWatching() {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    /**
+     * Register listener notified when a reload changes the configuration.
+     */
+    public void addListener(ConfigurationListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Current configuration, the returned snapshot never changes.
+     */
+    public ConfigurationSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Parse the configuration again and publish it if it changed, notifying the listeners about the changed properties.
+     *
+     * @return names of the changed properties
+     */
+    public synchronized Set<String> reload() {
+        ConfigurationSnapshot previous = snapshot;
+        ConfigurationSnapshot current = load();
+        Set<String> changed = previous.changedProperties(current);
+        if (changed.isEmpty()) {
+            log.debug("Configuration reloaded without changes");
+            return changed;
+        }
+
+        snapshot = current;
+        log.info("Configuration reloaded, changed properties: " + changed);
+        for (ConfigurationListener listener : listeners) {
+            try {
+                listener.configurationChanged(previous, current, changed);
+            } catch (RuntimeException ex) {
+                log.error("Configuration listener failed: " + ex.getMessage(), ex);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Build new snapshot from the environment variables, the configuration file, application.properties and the default values.
+     */
+    private synchronized ConfigurationSnapshot load() {
+        fileProperties = readConfigFile();
+
+        Map<String, String> values = new TreeMap<>();
+        Map<String, List<String>> kubeconfigsWithFilters = getKubeconfigsWithFilters(values);
+        ConfigurationSnapshot loaded = new ConfigurationSnapshot(Collections.unmodifiableMap(values), kubeconfigsWithFilters);
+
+        loaded.setNamespace(getProperty(NAMESPACE, values));
+        loaded.setCheckThreads(getIntProperty(CHECK_THREADS, values));
+        loaded.setKubeconfigConcurrency(getIntProperty(CHECK_KUBECONFIG_CONCURRENCY, values));
+        loaded.setDeployCheckConcurrency(getIntProperty(DEPLOY_CHECK_CONCURRENCY, values));
+        loaded.setIntervalMinFactor(getDoubleProperty(INTERVAL_MIN_FACTOR, values));
+        loaded.setIntervalMaxFactor(getDoubleProperty(INTERVAL_MAX_FACTOR, values));
+        loaded.setHttpMaxRequests(getIntProperty(HTTP_MAX_REQUESTS, values));
+        loaded.setHttpMaxRequestsPerHost(getIntProperty(HTTP_MAX_REQUESTS_PER_HOST, values));
+        loaded.setHttpMaxIdleConnections(getIntProperty(HTTP_MAX_IDLE_CONNECTIONS, values));
+        loaded.setHttpKeepAlive(getIntProperty(HTTP_KEEP_ALIVE, values));
+        loaded.setManifestTtl(getIntProperty(MANIFEST_TTL, values));
+        loaded.setManifestDirectory(getProperty(MANIFEST_DIRECTORY, values));
+        loaded.setEventsBuffer(getIntProperty(EVENTS_BUFFER, values));
+        loaded.setStateFile(getProperty(STATE_FILE, values));
+        loaded.setStateMaxAge(getIntProperty(STATE_MAX_AGE, values));
+        loaded.setStateCheckpoint(getIntProperty(STATE_CHECKPOINT, values));
+        return loaded;
+    }
+
+    private Properties readConfigFile() {
+        Properties properties = new Properties();
+        if (configFile == null || !Files.isRegularFile(configFile)) {
+            return properties;
+        }
+        try (Reader reader = Files.newBufferedReader(configFile, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException ex) {
+            log.error("Couldn't read configuration file " + configFile + ": " + ex.getMessage());
+        }
+        return properties;
+    }
+
+    /**
+     * Watch the directory of the configuration file and reload the configuration whenever the file changes.
+     */
+    private void watch() {
+        try {
+            watcher = new DirectoryWatcher("configuration-watch", (directory, name) -> configFile.getFileName().toString().equals(name), () -> {
+                try {
+                    reload();
+                } catch (RuntimeException ex) {
+                    log.error("Couldn't reload configuration file " + configFile + ", keeping the previous configuration: " + ex.getMessage(), ex);
+                }
+            });
+            watcher.watch(configFile.getParent());
+        } catch (IOException ex) {
+            log.error("Couldn't watch configuration file " + configFile + ", it is read only at startup: " + ex.getMessage());
+            if (watcher != null) {
+                watcher.close();
+                watcher = null;
+            }
+        }
+    }
 
     /**
      * Get single property by the exact name of the property's name. <br/>
-     * The priority is: Environment variable, application.properties, default value
+     * The priority is: Environment variable, configuration file, application.properties, default value
      */
-    private synchronized String getProperty(Property property) {
+    private String getProperty(Property property) {
         String p = System.getenv(property.getEnvVarName());
 
+        if (p == null || p.isEmpty()) {
+            p = fileProperties.getProperty(property.getApplicationPropertyName());
+        }
+
         if (p == null || p.isEmpty()) {
             p = ConfigProvider.getConfig().getOptionalValue(property.getApplicationPropertyName(), String.class).orElse(null);
         }
@@ -44,16 +232,32 @@ public class Configuration {
         return p;
     }
 
+    /**
+     * Get single property and remember its value in the values of the snapshot being built.
+     */
+    private String getProperty(Property property, Map<String, String> values) {
+        String value = getProperty(property);
+        values.put(property.getApplicationPropertyName(), value);
+        return value;
+    }
+
     /**
      * Get list of property names containing the provided property's name. <br/>
-     * The priority is: Environment variable, application.properties
+     * The priority is: Environment variable, configuration file, application.properties
      */
-    private synchronized List<String> getPropertyNames(Property property) {
+    private List<String> getPropertyNames(Property property) {
         List<String> propertyNames = System.getenv().keySet()
             .stream()
             .filter(key -> key.contains(property.getEnvVarName()))
             .collect(Collectors.toList());
 
+        if (propertyNames.isEmpty()) {
+            propertyNames = fileProperties.stringPropertyNames()
+                .stream()
+                .filter(p -> p.contains(property.getApplicationPropertyName()))
+                .collect(Collectors.toList());
+        }
+
         if (propertyNames.isEmpty()) {
             propertyNames = StreamSupport.stream(ConfigProvider.getConfig().getPropertyNames().spliterator(), false)
                 .filter(p -> p.contains(property.getApplicationPropertyName()))
@@ -63,21 +267,28 @@ public class Configuration {
         return propertyNames;
     }
 
-    public synchronized Map<String, List<String>> getKubeconfigsWithFilters() {
+    /**
+     * Kubeconfig URLs mapped to the context filters of each kubeconfig.
+     */
+    public Map<String, List<String>> getKubeconfigsWithFilters() {
+        return snapshot.getKubeconfigsWithFilters();
+    }
+
+    private Map<String, List<String>> getKubeconfigsWithFilters(Map<String, String> values) {
         List<String> kubeconfigPropertyNames = getPropertyNames(KUBECONFIGS);
         List<String> filterPropertyNames = getPropertyNames(CONTEXT_FILTER);
 
-        Map<String, List<String>> kubeconfigsWithFilters = new HashMap<>();
+        Map<String, List<String>> kubeconfigsWithFilters = new LinkedHashMap<>();
 
         for (String kubeconfigPropertyName : kubeconfigPropertyNames) {
             List<String> filters = new ArrayList<>();
 
             if (filterPropertyNames.size() == 0) {
-                filters.add(getProperty(CONTEXT_FILTER));
+                filters.add(getProperty(CONTEXT_FILTER, values));
             } else if (filterPropertyNames.size() == 1) {
                 // If there is only 1 filter, apply it for all kubeconfigs
                 filters.addAll(
-                    Arrays.asList(getProperty(new Property(Property.envVarToApplicationProperty(filterPropertyNames.get(0)))).split(","))
+                    Arrays.asList(getProperty(new Property(Property.envVarToApplicationProperty(filterPropertyNames.get(0))), values).split(","))
                 );
             } else {
                 // Otherwise there should be a filter for each kubeconfig provided
@@ -89,21 +300,145 @@ public class Configuration {
                             Property.envVarToApplicationProperty(kubeconfigPropertyName)
                                 .replaceFirst(KUBECONFIGS.getApplicationPropertyName(), ""))
                     ).findFirst()
-                    .orElseThrow(() -> new IllegalStateException(""));
+                    .orElseThrow(() -> new IllegalStateException("No context filter property found for kubeconfig property " + kubeconfigPropertyName
+                        + ", there are several context filters, so each kubeconfig needs its own"));
 
                 filters.addAll(
-                    Arrays.asList(getProperty(new Property(Property.envVarToApplicationProperty(filterPropertyName))).split(","))
+                    Arrays.asList(getProperty(new Property(Property.envVarToApplicationProperty(filterPropertyName)), values).split(","))
                 );
             }
 
-            kubeconfigsWithFilters.put(getProperty(new Property(Property.envVarToApplicationProperty(kubeconfigPropertyName))), filters);
+            kubeconfigsWithFilters.put(getProperty(new Property(Property.envVarToApplicationProperty(kubeconfigPropertyName)), values),
+                Collections.unmodifiableList(filters));
         }
 
-        log.info(kubeconfigsWithFilters);
-        return kubeconfigsWithFilters;
+        return Collections.unmodifiableMap(kubeconfigsWithFilters);
     }
 
     public String getNamespace() {
-        return getProperty(NAMESPACE);
+        return snapshot.getNamespace();
+    }
+
+    /**
+     * Size of the worker pool shared by all cluster checks, i.e. the global limit of concurrently running checks.
+     */
+    public int getCheckThreads() {
+        return snapshot.getCheckThreads();
+    }
+
+    /**
+     * Maximum number of checks of a single job running at once against clusters of the same kubeconfig.
+     */
+    public int getKubeconfigConcurrency() {
+        return snapshot.getKubeconfigConcurrency();
+    }
+
+    /**
+     * Maximum number of clusters running the sample application deployment check at once.
+     */
+    public int getDeployCheckConcurrency() {
+        return snapshot.getDeployCheckConcurrency();
+    }
+
+    /**
+     * Multiple of a job's period used as the interval of a cluster's checks right after its accessibility or working state changed.
+     */
+    public double getIntervalMinFactor() {
+        return snapshot.getIntervalMinFactor();
+    }
+
+    /**
+     * Multiple of a job's period the interval of a stable cluster's checks backs off to.
+     */
+    public double getIntervalMaxFactor() {
+        return snapshot.getIntervalMaxFactor();
+    }
+
+    /**
+     * Maximum number of asynchronous HTTP calls (including watches) running at once over the shared transport.
+     */
+    public int getHttpMaxRequests() {
+        return snapshot.getHttpMaxRequests();
+    }
+
+    /**
+     * Maximum number of asynchronous HTTP calls (including watches) running at once against a single host.
+     */
+    public int getHttpMaxRequestsPerHost() {
+        return snapshot.getHttpMaxRequestsPerHost();
+    }
+
+    /**
+     * Maximum number of idle connections kept in the shared connection pool.
+     */
+    public int getHttpMaxIdleConnections() {
+        return snapshot.getHttpMaxIdleConnections();
+    }
+
+    /**
+     * Number of seconds an idle connection is kept in the shared connection pool.
+     */
+    public int getHttpKeepAlive() {
+        return snapshot.getHttpKeepAlive();
+    }
+
+    /**
+     * Number of seconds a downloaded manifest is used before it is revalidated.
+     */
+    public int getManifestTtl() {
+        return snapshot.getManifestTtl();
+    }
+
+    /**
+     * Directory with local copies of the manifests, empty if there is none.
+     */
+    public String getManifestDirectory() {
+        return snapshot.getManifestDirectory();
+    }
+
+    /**
+     * Number of the latest cluster events kept to resume the event streams from.
+     */
+    public int getEventsBuffer() {
+        return snapshot.getEventsBuffer();
+    }
+
+    /**
+     * File the last known state of the clusters is persisted to, empty if the state isn't persisted.
+     */
+    public String getStateFile() {
+        return snapshot.getStateFile();
+    }
+
+    /**
+     * Number of seconds after which a persisted state is too old to be restored.
+     */
+    public int getStateMaxAge() {
+        return snapshot.getStateMaxAge();
+    }
+
+    /**
+     * Number of seconds between two checkpoints rewriting the persisted state with the current state of all clusters.
+     */
+    public int getStateCheckpoint() {
+        return snapshot.getStateCheckpoint();
+    }
+
+    private double getDoubleProperty(Property property, Map<String, String> values) {
+        try {
+            return Double.parseDouble(getProperty(property, values));
+        } catch (NumberFormatException ex) {
+            log.error("Property " + property.getApplicationPropertyName() + " is not a number, using the default value");
+            return Double.parseDouble(property.getDefaultValue());
+        }
+    }
+
+    private int getIntProperty(Property property, Map<String, String> values) {
+        try {
+            return Integer.parseInt(getProperty(property, values));
+        } catch (NumberFormatException ex) {
+            log.error("Property " + property.getApplicationPropertyName() + " is not a number, using the default value");
+            return Integer.parseInt(property.getDefaultValue());
+        }
     }
 }
@@ -0,0 +1,14 @@
+package com.github.jsafarik.ocp.monitoring.config;
+
+import java.util.Set;
+
+/**
+ * Listener notified by {@link Configuration} when a reload changes the configuration
+ */
+public interface ConfigurationListener {
+
+    /**
+     * @param changed application property names whose values changed
+     */
+    void configurationChanged(ConfigurationSnapshot previous, ConfigurationSnapshot current, Set<String> changed);
+}
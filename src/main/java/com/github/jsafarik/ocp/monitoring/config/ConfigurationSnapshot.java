@@ -0,0 +1,80 @@
+package com.github.jsafarik.ocp.monitoring.config;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Parsed configuration, created by {@link Configuration} whenever the configuration is (re)loaded and never changed after that. <br/>
+ * See the getters of {@link Configuration} for the meaning of the values.
+ */
+@Getter
+@Setter(AccessLevel.PACKAGE)
+public class ConfigurationSnapshot {
+
+    /**
+     * Application property name of every resolved property mapped to its raw value, used to find the changed properties
+     */
+    private final Map<String, String> values;
+
+    private final Map<String, List<String>> kubeconfigsWithFilters;
+
+    private String namespace;
+
+    private int checkThreads;
+
+    private int kubeconfigConcurrency;
+
+    private int deployCheckConcurrency;
+
+    private double intervalMinFactor;
+
+    private double intervalMaxFactor;
+
+    private int httpMaxRequests;
+
+    private int httpMaxRequestsPerHost;
+
+    private int httpMaxIdleConnections;
+
+    private int httpKeepAlive;
+
+    private int manifestTtl;
+
+    private String manifestDirectory;
+
+    private int eventsBuffer;
+
+    private String stateFile;
+
+    private int stateMaxAge;
+
+    private int stateCheckpoint;
+
+    /**
+     * The other fields are set only by {@link Configuration} before the snapshot is published
+     */
+    ConfigurationSnapshot(Map<String, String> values, Map<String, List<String>> kubeconfigsWithFilters) {
+        this.values = values;
+        this.kubeconfigsWithFilters = kubeconfigsWithFilters;
+    }
+
+    /**
+     * @return application property names whose values differ between the snapshots
+     */
+    public Set<String> changedProperties(ConfigurationSnapshot other) {
+        Set<String> changed = new TreeSet<>();
+        values.forEach((name, value) -> {
+            if (!value.equals(other.values.get(name))) {
+                changed.add(name);
+            }
+        });
+        other.values.keySet().stream().filter(name -> !values.containsKey(name)).forEach(changed::add);
+        return changed;
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.jsafarik.ocp.monitoring.job;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Result of a {@link ClusterCheck} which keeps cleaning up the cluster after it is completed or cancelled. <br/>
+ * The {@link ClusterCheckEngine} hands the concurrency slots of such check over to the next check only once the cleanup completes,
+ * so the next check doesn't run into the leftovers of the previous one.
+ */
+public class CleanupFuture<T> extends CompletableFuture<T> {
+
+    private final CompletableFuture<?> cleanup;
+
+    /**
+     * @param cleanup future completed once the check finished cleaning up, it has to complete even when the result is cancelled
+     */
+    public CleanupFuture(CompletableFuture<?> cleanup) {
+        this.cleanup = cleanup;
+    }
+
+    public CompletableFuture<?> getCleanup() {
+        return cleanup;
+    }
+}
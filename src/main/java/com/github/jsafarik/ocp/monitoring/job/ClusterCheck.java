@@ -0,0 +1,19 @@
+package com.github.jsafarik.ocp.monitoring.job;
+
+import com.github.jsafarik.ocp.monitoring.cluster.Cluster;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Single check of a single cluster executed by the {@link ClusterCheckEngine}. <br/>
+ * The check is started on a worker thread of the engine, checks waiting for something should return a stage
+ * which is not yet completed instead of blocking the worker.
+ */
+@FunctionalInterface
+public interface ClusterCheck {
+
+    /**
+     * @return stage completed with true if the check passed, otherwise false
+     */
+    CompletionStage<Boolean> check(Cluster cluster);
+}
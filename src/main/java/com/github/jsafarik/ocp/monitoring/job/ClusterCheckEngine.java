@@ -0,0 +1,435 @@
+package com.github.jsafarik.ocp.monitoring.job;
+
+import com.github.jsafarik.ocp.monitoring.cluster.Cluster;
+import com.github.jsafarik.ocp.monitoring.cluster.ClusterListener;
+import com.github.jsafarik.ocp.monitoring.cluster.Kubeconfig;
+import com.github.jsafarik.ocp.monitoring.cluster.Manager;
+import com.github.jsafarik.ocp.monitoring.config.Configuration;
+import com.github.jsafarik.ocp.monitoring.config.ConfigurationListener;
+import com.github.jsafarik.ocp.monitoring.config.ConfigurationSnapshot;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.jbosslog.JBossLog;
+
+/**
+ * Runs {@link ClusterCheck}s against the tracked clusters. <br/>
+ * All checks share one bounded worker pool (the global concurrency limit). Each job can limit how many of its checks run at once,
+ * and no job checks more than {@link Configuration#getKubeconfigConcurrency()} clusters of the same kubeconfig at once.
+ * Checks waiting for their turn don't hold any thread. The limits follow the configuration reloads. <br/>
+ * Each check has a deadline, a check not finished in time is aborted and counted as failed. Checks of removed clusters are aborted as well. <br/>
+ * Duration of each run over all clusters is recorded in the {@link ClusterCheckEngine#METRIC_CYCLE_DURATION_NAME} timer,
+ * failed checks are counted in the {@link ClusterCheckEngine#METRIC_CHECK_FAILURES_NAME} counter with the reason of the failure.
+ */
+@ApplicationScoped
+@JBossLog
+public class ClusterCheckEngine implements ClusterListener, ConfigurationListener {
+
+    public static final String METRIC_CYCLE_DURATION_NAME = "monitoring.cycle.duration";
+    public static final String METRIC_CHECK_FAILURES_NAME = "monitoring.check.failures";
+
+    /**
+     * The check completed with false
+     */
+    public static final String REASON_FAILED = "failed";
+
+    /**
+     * The check completed exceptionally
+     */
+    public static final String REASON_ERROR = "error";
+
+    /**
+     * The check didn't finish before its deadline
+     */
+    public static final String REASON_TIMEOUT = "timeout";
+
+    /**
+     * The check was cancelled because the cluster was removed
+     */
+    public static final String REASON_INTERRUPTED = "interrupted";
+
+    private final ExecutorService executor;
+
+    /**
+     * Enforces the deadlines of the checks
+     */
+    private final ScheduledExecutorService timer;
+
+    private volatile int kubeconfigConcurrency;
+
+    private final MeterRegistry registry;
+
+    /**
+     * Gates limiting the checks of each job, keyed by the name of the job
+     */
+    private final Map<String, Gate> jobGates = new ConcurrentHashMap<>();
+
+    /**
+     * Gates limiting the checks of each job against each kubeconfig, keyed by the name of the job and the URL of the kubeconfig
+     */
+    private final Map<String, Gate> kubeconfigGates = new ConcurrentHashMap<>();
+
+    /**
+     * Checks currently running or waiting for their turn, keyed by the name of the job and the ID of the cluster
+     */
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+
+    public ClusterCheckEngine(Configuration configuration, MeterRegistry registry, Manager manager) {
+        this.kubeconfigConcurrency = Math.max(1, configuration.getKubeconfigConcurrency());
+        this.registry = registry;
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, configuration.getCheckThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "cluster-check-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-check-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        manager.addListener(this);
+        configuration.addListener(this);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        timer.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Executor running the checks, can be used by the checks to continue their work once whatever they waited for is done.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Run the check against all clusters of the provided kubeconfigs and wait for all of them to finish. <br/>
+     * At most the given number of clusters are checked at once by the job, each of them within the deadline.
+     *
+     * @param name name of the job used in logs and metrics
+     * @return how long the whole run took
+     */
+    public Duration run(String name, List<Kubeconfig> kubeconfigs, ClusterCheck check, int concurrency, Duration deadline) {
+        long start = System.nanoTime();
+
+        List<CompletableFuture<Boolean>> checks = new ArrayList<>();
+        for (Kubeconfig kubeconfig : kubeconfigs) {
+            for (Cluster cluster : kubeconfig.getClusters()) {
+                checks.add(submit(name, cluster, check, concurrency, deadline));
+            }
+        }
+        CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0])).exceptionally(ex -> null).join();
+
+        Duration duration = Duration.ofNanos(System.nanoTime() - start);
+        registry.timer(METRIC_CYCLE_DURATION_NAME, "job", name).record(duration);
+        log.info("Run of " + name + " over " + checks.size() + " clusters took " + duration.toMillis() + " ms");
+        return duration;
+    }
+
+    /**
+     * Start the check of a single cluster once the job and the cluster's kubeconfig are below their concurrency limits. <br/>
+     * If the job's previous check of the same cluster didn't finish yet, no new check is started and the future of the previous one is returned.
+     * When the check doesn't finish within the deadline counted from its start, or when the returned future is cancelled, the check is aborted:
+     * its worker thread is interrupted, its stage is cancelled on a worker thread and its concurrency slots are handed over to the next waiting check,
+     * once the check cleaned up if its stage is a {@link CleanupFuture}.
+     *
+     * @param name name of the job used in logs and metrics
+     * @param concurrency maximum number of clusters checked at once by the job
+     * @param deadline time the check is given to finish
+     * @return future completed with the result of the check, false if the check failed with an exception or timed out
+     */
+    public CompletableFuture<Boolean> submit(String name, Cluster cluster, ClusterCheck check, int concurrency, Duration deadline) {
+        // The gate is created first, so the job is known to clusterRemoved once the check is in flight
+        Gate jobGate = jobGates.computeIfAbsent(name, k -> new Gate(Math.max(1, concurrency)));
+        String key = name + "/" + cluster.getId();
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        CompletableFuture<Boolean> previous = inFlight.putIfAbsent(key, result);
+        if (previous != null) {
+            log.warn("Previous check " + key + " is still running, skipping");
+            return previous;
+        }
+
+        // The job's concurrency may come from the configuration, which may have been reloaded since the gate was created
+        jobGate.resize(Math.max(1, concurrency));
+        Gate kubeconfigGate = kubeconfigGates.computeIfAbsent(name + "/" + cluster.getKubeconfig().getUrl(), k -> new Gate(kubeconfigConcurrency));
+
+        RunningCheck running = new RunningCheck(name, cluster, check, result, () -> {
+            kubeconfigGate.leave();
+            jobGate.leave();
+        });
+        result.whenComplete((r, ex) -> {
+            inFlight.remove(key, result);
+            if (result.isCancelled()) {
+                running.abort(REASON_INTERRUPTED);
+            }
+        });
+
+        // The kubeconfig slot is taken first, so a check waiting for a busy kubeconfig doesn't hold a slot of the job
+        kubeconfigGate.enter(() -> jobGate.enter(() -> executor.execute(() -> running.run(deadline))));
+
+        return result;
+    }
+
+    /**
+     * Apply the changed concurrency limit of the kubeconfigs to the existing gates.
+     */
+    @Override
+    public void configurationChanged(ConfigurationSnapshot previous, ConfigurationSnapshot current, Set<String> changed) {
+        int concurrency = Math.max(1, current.getKubeconfigConcurrency());
+        if (concurrency != kubeconfigConcurrency) {
+            kubeconfigConcurrency = concurrency;
+            kubeconfigGates.values().forEach(gate -> gate.resize(concurrency));
+        }
+    }
+
+    /**
+     * Abort all running and waiting checks of the removed cluster and forget the gates of its kubeconfig once it has no clusters left.
+     */
+    @Override
+    public void clusterRemoved(Cluster cluster) {
+        // Context names contain "/", so only the exact keys identify the cluster's checks
+        for (String name : jobGates.keySet()) {
+            CompletableFuture<Boolean> result = inFlight.get(name + "/" + cluster.getId());
+            if (result != null) {
+                result.cancel(true);
+            }
+        }
+
+        if (cluster.getKubeconfig().getClusters().isEmpty()) {
+            // Checks still holding the gates release them anyway, the next checks of the kubeconfig get new ones
+            jobGates.keySet().forEach(name -> kubeconfigGates.remove(name + "/" + cluster.getKubeconfig().getUrl()));
+        }
+    }
+
+    /**
+     * Single check of a cluster, from the moment it gets its concurrency slots until it finishes or is aborted.
+     */
+    private class RunningCheck {
+
+        private final String name;
+
+        private final Cluster cluster;
+
+        private final ClusterCheck check;
+
+        private final CompletableFuture<Boolean> result;
+
+        private final Runnable release;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private final AtomicBoolean aborted = new AtomicBoolean();
+
+        /**
+         * Thread running the synchronous part of the check, null when the check isn't running on any thread
+         */
+        private Thread worker;
+
+        private CompletableFuture<Boolean> stage;
+
+        private ScheduledFuture<?> timeout;
+
+        /**
+         * Time in nanoseconds when the check got its slots and started
+         */
+        private long started;
+
+        RunningCheck(String name, Cluster cluster, ClusterCheck check, CompletableFuture<Boolean> result, Runnable release) {
+            this.name = name;
+            this.cluster = cluster;
+            this.check = check;
+            this.result = result;
+            this.release = release;
+        }
+
+        void run(Duration deadline) {
+            synchronized (this) {
+                if (result.isDone()) {
+                    // Aborted while waiting for the slots
+                    release();
+                    return;
+                }
+                worker = Thread.currentThread();
+                started = System.nanoTime();
+                timeout = timer.schedule(() -> abort(REASON_TIMEOUT), deadline.toMillis(), TimeUnit.MILLISECONDS);
+            }
+
+            CompletableFuture<Boolean> checkStage;
+            try {
+                checkStage = check.check(cluster).toCompletableFuture();
+            } catch (RuntimeException ex) {
+                checkStage = CompletableFuture.failedFuture(ex);
+            } finally {
+                synchronized (this) {
+                    worker = null;
+                    // Don't leave the interruption of an aborted check to the next task of the worker thread
+                    Thread.interrupted();
+                }
+            }
+
+            synchronized (this) {
+                stage = checkStage;
+                if (result.isDone()) {
+                    stage.cancel(true);
+                }
+            }
+
+            CompletableFuture<?> done = checkStage instanceof CleanupFuture ? ((CleanupFuture<?>) checkStage).getCleanup() : checkStage;
+            done.whenComplete((r, ex) -> release());
+            checkStage.whenComplete((passed, ex) -> {
+                if (ex != null) {
+                    if (result.complete(false)) {
+                        log.error("Check " + name + "/" + cluster.getId() + " failed: " + ex.getMessage(), ex);
+                        countFailure(REASON_ERROR);
+                        recordResult(false);
+                    }
+                } else if (result.complete(passed)) {
+                    if (!passed) {
+                        countFailure(REASON_FAILED);
+                    }
+                    recordResult(passed);
+                }
+            });
+        }
+
+        /**
+         * Stop the check and complete it as failed with the reason, unless it has already finished.
+         */
+        void abort(String reason) {
+            if (!(result.complete(false) || result.isCancelled()) || !aborted.compareAndSet(false, true)) {
+                return;
+            }
+
+            log.warn("Check " + name + "/" + cluster.getId() + " aborted: " + reason);
+            countFailure(reason);
+            CompletableFuture<Boolean> abortedStage;
+            synchronized (this) {
+                // Interrupted checks (removed clusters) say nothing about the cluster
+                if (started != 0 && !REASON_INTERRUPTED.equals(reason)) {
+                    recordResult(false);
+                }
+                if (worker != null) {
+                    worker.interrupt();
+                }
+                abortedStage = stage;
+                if (worker != null && stage == null) {
+                    // Don't make other checks wait for a check that may not react to the interruption
+                    release();
+                }
+            }
+
+            if (abortedStage != null) {
+                // The check may clean up synchronously when cancelled, which mustn't hold the deadline thread,
+                // the slots are released once the stage (or its cleanup) completes
+                executor.execute(() -> abortedStage.cancel(true));
+            }
+        }
+
+        private void release() {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            if (released.compareAndSet(false, true)) {
+                release.run();
+            }
+        }
+
+        private void recordResult(boolean passed) {
+            cluster.getHistory().record(name, System.currentTimeMillis(), passed, Duration.ofNanos(System.nanoTime() - started));
+        }
+
+        private void countFailure(String reason) {
+            cluster.counter(METRIC_CHECK_FAILURES_NAME, "job", name, "reason", reason).increment();
+        }
+    }
+
+    /**
+     * Limits the number of tasks running at once, tasks over the limit are queued instead of blocking the caller.
+     */
+    private static class Gate {
+
+        private int limit;
+
+        private final Deque<Runnable> waiting = new ArrayDeque<>();
+
+        private int running;
+
+        Gate(int limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * Run the task now if the gate is below its limit, otherwise once another task leaves the gate.
+         */
+        void enter(Runnable task) {
+            synchronized (this) {
+                if (running >= limit) {
+                    waiting.add(task);
+                    return;
+                }
+                running++;
+            }
+            task.run();
+        }
+
+        /**
+         * Hand the slot of the finished task over to the next waiting task, unless the gate is over its (lowered) limit.
+         */
+        void leave() {
+            Runnable next;
+            synchronized (this) {
+                next = running > limit ? null : waiting.poll();
+                if (next == null) {
+                    running--;
+                    return;
+                }
+            }
+            next.run();
+        }
+
+        /**
+         * Change the limit, waiting tasks are started right away when the limit grows.
+         * When the limit drops, the running tasks finish and no waiting task is started until the gate is below the new limit.
+         */
+        void resize(int limit) {
+            List<Runnable> started = new ArrayList<>();
+            synchronized (this) {
+                if (this.limit == limit) {
+                    return;
+                }
+                this.limit = limit;
+                while (running < limit && !waiting.isEmpty()) {
+                    running++;
+                    started.add(waiting.poll());
+                }
+            }
+            started.forEach(Runnable::run);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.jsafarik.ocp.monitoring.job;
+
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+import com.github.jsafarik.ocp.monitoring.cluster.Cluster;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+
+import lombok.Setter;
+import lombok.extern.jbosslog.JBossLog;
+
+/**
+ * Base class for jobs checking an aspect of each tracked cluster. <br/>
+ * The job only describes the check of a single cluster, the {@link ClusterCheckEngine} takes care of running it. <br/>
+ * Each cluster has its own trigger (see {@link com.github.jsafarik.ocp.monitoring.job.scheduler.JobScheduler}) which provides
+ * the {@link ClusterCheckJob#KUBECONFIG_URL_KEY} and {@link ClusterCheckJob#CONTEXT_KEY} job data. The execution only submits the check
+ * to the engine and doesn't wait for it to finish. Without the job data, the check is run against all clusters. <br/>
+ * Each check has to finish within {@link ClusterCheckJob#getDeadlineInSeconds()}, the engine aborts the checks which don't.
+ */
+@JBossLog
+public abstract class ClusterCheckJob extends MonitoringJob {
+
+    public static final String KUBECONFIG_URL_KEY = "kubeconfigUrl";
+    public static final String CONTEXT_KEY = "context";
+
+    @Setter
+    private String kubeconfigUrl;
+
+    @Setter
+    private String context;
+
+    @Override
+    public void execute(JobExecutionContext jobContext) throws JobExecutionException {
+        String name = getClass().getSimpleName();
+
+        if (context == null) {
+            getCheckEngine().run(name, getManager().getKubeconfigs(), this::check, getConcurrency(), getDeadline());
+            return;
+        }
+
+        Cluster cluster = getManager().findCluster(kubeconfigUrl, context);
+        if (cluster == null) {
+            log.warn("Cluster " + context + " is no longer tracked, skipping " + name);
+            return;
+        }
+        getCheckEngine().submit(name, cluster, this::check, getConcurrency(), getDeadline());
+    }
+
+    /**
+     * Used to supply the time each cluster's check is given to finish, by default the execution period.
+     */
+    public int getDeadlineInSeconds() {
+        return getPeriodInSeconds();
+    }
+
+    private Duration getDeadline() {
+        return Duration.ofSeconds(getDeadlineInSeconds());
+    }
+
+    /**
+     * Used to supply the maximum number of clusters checked at once, limited by the size of the engine's worker pool.
+     */
+    protected int getConcurrency() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Check a single cluster and update its metrics. <br/>
+     * Called on a worker thread of the {@link ClusterCheckEngine}, see {@link ClusterCheck#check(Cluster)}.
+     *
+     * @return stage completed with true if the check passed, otherwise false
+     */
+    protected abstract CompletionStage<Boolean> check(Cluster cluster);
+}
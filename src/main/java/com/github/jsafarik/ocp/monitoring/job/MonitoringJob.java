@@ -4,6 +4,7 @@ import org.quartz.Job;
 
 import com.github.jsafarik.ocp.monitoring.cluster.Manager;
 import com.github.jsafarik.ocp.monitoring.config.Configuration;
+import com.github.jsafarik.ocp.monitoring.util.ManifestCache;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -22,6 +23,14 @@ public abstract class MonitoringJob implements Job {
     @Setter
     private Configuration configuration;
 
+    @Getter
+    @Setter
+    private ClusterCheckEngine checkEngine;
+
+    @Getter
+    @Setter
+    private ManifestCache manifestCache;
+
     /**
      * Used to supply the execution period.
      */
@@ -0,0 +1,112 @@
+package com.github.jsafarik.ocp.monitoring.job;
+
+import com.github.jsafarik.ocp.monitoring.cluster.Cluster;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Records how long each stage of a job's check of a cluster took. <br/>
+ * Each stage is recorded in the cluster's {@link StageTimer#METRIC_STAGE_DURATION_NAME} timer tagged by the job, the stage and
+ * the outcome of the stage ({@link StageTimer#OUTCOME_SUCCESS}, {@link StageTimer#OUTCOME_FAILURE} or {@link StageTimer#OUTCOME_ERROR}).
+ */
+public class StageTimer {
+
+    public static final String METRIC_STAGE_DURATION_NAME = "cluster.check.stage.duration";
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_FAILURE = "failure";
+    public static final String OUTCOME_ERROR = "error";
+
+    private final Cluster cluster;
+
+    private final String job;
+
+    public StageTimer(Cluster cluster, String job) {
+        this.cluster = cluster;
+        this.job = job;
+    }
+
+    /**
+     * Start measuring the stage, the stage is recorded once it is finished.
+     */
+    public Stage start(String stage) {
+        return new Stage(stage);
+    }
+
+    /**
+     * Run the stage and record it, the stage succeeds when the action returns true.
+     */
+    public boolean time(String stage, BooleanSupplier action) {
+        Stage running = start(stage);
+        try {
+            boolean success = action.getAsBoolean();
+            running.finish(success);
+            return success;
+        } catch (RuntimeException ex) {
+            running.error();
+            throw ex;
+        }
+    }
+
+    /**
+     * Start the stage and record it once the returned future completes, the stage succeeds when the future completes with true.
+     */
+    public CompletableFuture<Boolean> timeAsync(String stage, Supplier<CompletableFuture<Boolean>> action) {
+        Stage running = start(stage);
+        CompletableFuture<Boolean> result;
+        try {
+            result = action.get();
+        } catch (RuntimeException ex) {
+            running.error();
+            throw ex;
+        }
+
+        result.whenComplete((success, ex) -> {
+            if (ex != null) {
+                running.error();
+            } else {
+                running.finish(success);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Stage being measured, only the first finish of the stage is recorded.
+     */
+    public class Stage {
+
+        private final String name;
+
+        private final long start = System.nanoTime();
+
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        public void finish(boolean success) {
+            record(success ? OUTCOME_SUCCESS : OUTCOME_FAILURE);
+        }
+
+        public void error() {
+            record(OUTCOME_ERROR);
+        }
+
+        public boolean isFinished() {
+            return finished.get();
+        }
+
+        private void record(String outcome) {
+            if (finished.compareAndSet(false, true)) {
+                cluster.timer(METRIC_STAGE_DURATION_NAME, "job", job, "stage", name, "outcome", outcome)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
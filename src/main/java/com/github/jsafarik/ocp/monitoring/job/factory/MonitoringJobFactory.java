@@ -8,22 +8,28 @@ import org.quartz.spi.TriggerFiredBundle;
 
 import com.github.jsafarik.ocp.monitoring.cluster.Manager;
 import com.github.jsafarik.ocp.monitoring.config.Configuration;
+import com.github.jsafarik.ocp.monitoring.job.ClusterCheckEngine;
 import com.github.jsafarik.ocp.monitoring.job.MonitoringJob;
+import com.github.jsafarik.ocp.monitoring.util.ManifestCache;
 
 import javax.enterprise.context.ApplicationScoped;
 
 /**
- * Custom Job factory used to provide each job object the Manager instance
+ * Custom Job factory used to provide each job object the Manager, Configuration, ClusterCheckEngine and ManifestCache instances
  */
 @ApplicationScoped
 public class MonitoringJobFactory extends PropertySettingJobFactory {
 
     private Manager manager;
     private Configuration configuration;
+    private ClusterCheckEngine checkEngine;
+    private ManifestCache manifestCache;
 
-    public MonitoringJobFactory(Manager manager, Configuration configuration) {
+    public MonitoringJobFactory(Manager manager, Configuration configuration, ClusterCheckEngine checkEngine, ManifestCache manifestCache) {
         this.manager = manager;
         this.configuration = configuration;
+        this.checkEngine = checkEngine;
+        this.manifestCache = manifestCache;
     }
 
     @Override
@@ -33,6 +39,8 @@ public class MonitoringJobFactory extends PropertySettingJobFactory {
         if (job instanceof MonitoringJob) {
             ((MonitoringJob) job).setManager(manager);
             ((MonitoringJob) job).setConfiguration(configuration);
+            ((MonitoringJob) job).setCheckEngine(checkEngine);
+            ((MonitoringJob) job).setManifestCache(manifestCache);
         }
 
         return job;
@@ -1,41 +1,69 @@
 package com.github.jsafarik.ocp.monitoring.job.impl;
 
 import org.quartz.DisallowConcurrentExecution;
-import org.quartz.JobExecutionContext;
-import org.quartz.JobExecutionException;
 
 import com.github.jsafarik.ocp.monitoring.cluster.Cluster;
-import com.github.jsafarik.ocp.monitoring.cluster.Kubeconfig;
-import com.github.jsafarik.ocp.monitoring.job.MonitoringJob;
+import com.github.jsafarik.ocp.monitoring.job.ClusterCheckJob;
+import com.github.jsafarik.ocp.monitoring.job.StageTimer;
 import com.github.jsafarik.ocp.monitoring.util.http.HttpUtils;
+import com.github.jsafarik.ocp.monitoring.util.http.Request;
 import com.github.jsafarik.ocp.monitoring.util.http.Response;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 import io.fabric8.kubernetes.client.KubernetesClientException;
 import lombok.extern.jbosslog.JBossLog;
 
 /**
  * Check if each cluster is accessible by retrieving the Console URL (when retrieved -> API is working)
- * and send GET request to the console. <br/><br/>
+ * and send GET request to the console. The console request doesn't block the check's thread. <br/>
+ * Duration of both stages is recorded by the {@link StageTimer}. <br/><br/>
  * Sets the {@link AccessibilityJob#METRIC_ACCESSIBILITY_NAME} metric on each cluster.
  */
 @JBossLog
 @DisallowConcurrentExecution
-public class AccessibilityJob extends MonitoringJob {
+public class AccessibilityJob extends ClusterCheckJob {
 
     public static final String METRIC_ACCESSIBILITY_NAME = "cluster.accessible";
 
+    private static final String STAGE_API = "api_console_lookup";
+    private static final String STAGE_CONSOLE = "console_get";
+
     @Override
-    public void execute(JobExecutionContext context) throws JobExecutionException {
-        for (Kubeconfig kubeconfig : getManager().getKubeconfigs()) {
-            for (Cluster cluster : kubeconfig.getClusters()) {
-                String consoleUrl = checkApiAccessibility(cluster);
-                boolean consoleAccessibility = false;
-                if (consoleUrl != null) {
-                    consoleAccessibility = checkConsoleAccessibility(consoleUrl);
-                }
-                cluster.updateMetric(METRIC_ACCESSIBILITY_NAME, consoleUrl != null && consoleAccessibility);
-            }
+    public int getDeadlineInSeconds() {
+        return 30;
+    }
+
+    @Override
+    protected CompletionStage<Boolean> check(Cluster cluster) {
+        StageTimer stages = new StageTimer(cluster, getClass().getSimpleName());
+
+        StageTimer.Stage api = stages.start(STAGE_API);
+        String consoleUrl = checkApiAccessibility(cluster);
+        api.finish(consoleUrl != null);
+        if (consoleUrl == null) {
+            cluster.updateMetric(METRIC_ACCESSIBILITY_NAME, false);
+            return CompletableFuture.completedFuture(false);
         }
+
+        StageTimer.Stage console = stages.start(STAGE_CONSOLE);
+        CompletableFuture<Response> probe = HttpUtils.doRequestAsync(Request.get(consoleUrl));
+        CompletableFuture<Boolean> result = probe.thenApply(response -> {
+            boolean accessible = checkConsoleAccessibility(consoleUrl, response);
+            console.finish(accessible);
+            cluster.updateMetric(METRIC_ACCESSIBILITY_NAME, accessible);
+            return accessible;
+        });
+        result.whenComplete((accessible, ex) -> {
+            if (result.isCancelled()) {
+                // Aborted by the engine, the console didn't respond in time
+                probe.cancel(true);
+                console.error();
+                cluster.updateMetric(METRIC_ACCESSIBILITY_NAME, false);
+            }
+        });
+        return result;
     }
 
     /**
@@ -59,10 +87,13 @@ public class AccessibilityJob extends MonitoringJob {
     }
 
     /**
-     * Check that GET request to the console URL returns HTTP 200
+     * Check that GET request to the console URL returned HTTP 200
      */
-    private boolean checkConsoleAccessibility(String consoleUrl) {
-        Response response = HttpUtils.doRequest("GET", consoleUrl, null, null);
+    private boolean checkConsoleAccessibility(String consoleUrl, Response response) {
+        if (response.getFailure() != null) {
+            log.error("Get request for console " + consoleUrl + " failed: " + response.getFailure());
+            return false;
+        }
 
         if (response.getCode() != 200) {
             log.error("Get request for console " + consoleUrl + " returned " + response.getCode());
@@ -0,0 +1,491 @@
+package com.github.jsafarik.ocp.monitoring.job.impl;
+
+import com.github.jsafarik.ocp.monitoring.cluster.Cluster;
+import com.github.jsafarik.ocp.monitoring.cluster.NamespaceCache;
+import com.github.jsafarik.ocp.monitoring.cluster.PodLogWatcher;
+import com.github.jsafarik.ocp.monitoring.job.StageTimer;
+import com.github.jsafarik.ocp.monitoring.util.ManifestCache;
+import com.github.jsafarik.ocp.monitoring.util.MarkerMatcher;
+import com.github.jsafarik.ocp.monitoring.util.Utils;
+import com.github.jsafarik.ocp.monitoring.util.http.HttpUtils;
+import com.github.jsafarik.ocp.monitoring.util.http.Response;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.KubernetesList;
+import io.fabric8.kubernetes.api.model.PersistentVolumeClaim;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.openshift.api.model.BuildConfig;
+import io.fabric8.openshift.api.model.DeploymentConfig;
+import io.fabric8.openshift.api.model.ImageStream;
+import io.fabric8.openshift.api.model.Route;
+import io.fabric8.openshift.api.model.Template;
+import lombok.extern.jbosslog.JBossLog;
+import okhttp3.Headers;
+
+/**
+ * Single run of the sample application deployment check against a single cluster. <br/>
+ * All state of the run is kept in this object, so runs against different clusters can be executed concurrently.
+ */
+@JBossLog
+class DeployCheck {
+
+    private final static String DATABASE_NAME = "sample-app-db";
+    private final static String DATABASE_LIST_URL = "https://raw.githubusercontent.com/jsafarik/openshift-sample-app/master/openshift/postgres.yaml";
+
+    private final static String SAMPLE_APP_NAME = "sample-app-server";
+    private final static String SAMPLE_APP_URL = "https://raw.githubusercontent.com/jsafarik/openshift-sample-app/master/openshift/sampleApp.yaml";
+
+    private final static String TABLE_CREATED_MARKER = "Created table";
+    private final static MarkerMatcher LOG_MARKERS = new MarkerMatcher(
+        List.of(TABLE_CREATED_MARKER, "Task created", "Task updated", "Read single task", "Task deleted"));
+
+    private final static String STAGE_CREATE_PROJECT = "create_project";
+    private final static String STAGE_DEPLOY_DATABASE = "deploy_database";
+    private final static String STAGE_DATABASE_READY = "database_ready";
+    private final static String STAGE_DEPLOY_SAMPLE_APP = "deploy_sample_app";
+    private final static String STAGE_IMAGE_BUILD = "image_build";
+    private final static String STAGE_ROUTE_READY = "route_ready";
+    private final static String STAGE_SAMPLE_APP_READY = "sample_app_ready";
+    private final static String STAGE_CRUD = "crud";
+    private final static String STAGE_LOG = "log";
+    private final static String STAGE_DELETE_PROJECT = "delete_project";
+
+    private final static CompletableFuture<Boolean> FALSE = CompletableFuture.completedFuture(false);
+
+    private final Cluster cluster;
+
+    private final String namespace;
+
+    private final ManifestCache manifests;
+
+    private final Executor executor;
+
+    private final StageTimer stages;
+
+    /**
+     * Resources of the sample application's namespace, available once the project is created
+     */
+    private NamespaceCache cache;
+
+    /**
+     * Follows the log of the sample application's pod, available once the pod is ready
+     */
+    private PodLogWatcher logWatcher;
+
+    private volatile boolean cancelled;
+
+    /**
+     * Wait the run currently waits for
+     */
+    private volatile CompletableFuture<Void> pending;
+
+    /**
+     * @param executor executor used to evaluate the conditions the run is waiting for
+     */
+    DeployCheck(Cluster cluster, String namespace, ManifestCache manifests, Executor executor) {
+        this.cluster = cluster;
+        this.namespace = namespace;
+        this.manifests = manifests;
+        this.executor = executor;
+        this.stages = new StageTimer(cluster, DeployCheckJob.class.getSimpleName());
+    }
+
+    /**
+     * Deploy the sample application, check it and destroy it. <br/>
+     * No thread is blocked while the run waits for the cluster. The duration of each stage of the run is recorded by the {@link StageTimer}.
+     *
+     * @return future completed with true if the sample application worked and was destroyed, otherwise false
+     */
+    CompletableFuture<Boolean> run() {
+        return deploy()
+            .thenCompose(deployed -> deployed && !cancelled ? check() : FALSE)
+            .exceptionally(ex -> {
+                log.error("Sample application check failed on cluster " + cluster.getClient().getOpenshiftUrl() + ": " + ex.getMessage());
+                return false;
+            })
+            .thenCompose(working -> stages.timeAsync(STAGE_DELETE_PROJECT, this::destroy).thenApply(destroyed -> working && destroyed));
+    }
+
+    /**
+     * Stop waiting for the cluster and skip the remaining steps except the destruction of the created resources.
+     */
+    void cancel() {
+        cancelled = true;
+        CompletableFuture<Void> wait = pending;
+        if (wait != null) {
+            wait.cancel(true);
+        }
+    }
+
+    /**
+     * Create all resources necessary for the sample application and verify that the resources are created.
+     */
+    private CompletableFuture<Boolean> deploy() {
+        return stages.timeAsync(STAGE_CREATE_PROJECT, this::createNewProject)
+            .thenCompose(created -> created && !cancelled && startCache() && stages.time(STAGE_DEPLOY_DATABASE, this::deployDatabase)
+                ? stages.timeAsync(STAGE_DATABASE_READY, this::verifyDatabaseDeployed)
+                : FALSE)
+            .thenCompose(database -> database && !cancelled && stages.time(STAGE_DEPLOY_SAMPLE_APP, this::deploySampleApp)
+                ? verifySampleAppDeployed()
+                : FALSE);
+    }
+
+    /**
+     * Check that everything is working properly by using the sample application and inspection of logs
+     */
+    private CompletableFuture<Boolean> check() {
+        return stages.time(STAGE_CRUD, this::verifySampleAppWorking) ? stages.timeAsync(STAGE_LOG, this::verifySampleAppLog) : FALSE;
+    }
+
+    /**
+     * Start watching the resources of the sample application's namespace.
+     *
+     * @return true if the cache was started, otherwise false
+     */
+    private boolean startCache() {
+        try {
+            cache = new NamespaceCache(cluster.getClient(), namespace);
+        } catch (KubernetesClientException ex) {
+            log.error("Couldn't watch the resources of the sample application's namespace: " + ex.getMessage());
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Destroy all the created resources by destruction of the project
+     */
+    private CompletableFuture<Boolean> destroy() {
+        if (logWatcher != null) {
+            logWatcher.close();
+        }
+        if (cache != null) {
+            cache.close();
+        }
+
+        Boolean deleted;
+        try {
+            deleted = cluster.getClient().projects().withName(namespace).delete();
+        } catch (KubernetesClientException ex) {
+            log.error("Couldn't delete project associated with sample application: " + ex.getMessage());
+            return FALSE;
+        }
+
+        // Verify that the return value of the delete operation returned true
+        if (deleted == null || !deleted) {
+            log.error("Couldn't delete project associated with sample application on cluster " + cluster.getClient().getOpenshiftUrl());
+            return FALSE;
+        }
+
+        // Wait for the project to disappear, even when the run is cancelled, so the next run doesn't find it still being deleted
+        return Utils.waitFor(() -> cluster.getClient().projects().withName(namespace).get() == null, 60, executor)
+            .handle((result, ex) -> {
+                if (ex != null) {
+                    log.error("Couldn't verify that the project is no longer present on cluster " + cluster.getClient().getOpenshiftUrl());
+                    return false;
+                }
+                return true;
+            });
+    }
+
+    /**
+     * Create new project in provided cluster and wait up to 60 seconds for the project to appear in the projects list.<br/>
+     *
+     * @return future completed with true if everything went well and there is a new project created, false in case something was not possible to do
+     */
+    private CompletableFuture<Boolean> createNewProject() {
+        // Obtain a user used to create the project
+        String user;
+        try {
+            user = cluster.getClient().currentUser().getMetadata().getName();
+        } catch (KubernetesClientException ex) {
+            log.error("Couldn't retrieve current user name on cluster " + cluster.getClient().getOpenshiftUrl());
+            return FALSE;
+        }
+
+        // Try to create the project
+        try {
+            cluster.getClient()
+                .projects()
+                .createProjectAndRoleBindings(
+                    namespace,
+                    "OpenShift monitoring test application",
+                    namespace.replace("-", " "),
+                    user,
+                    user);
+        } catch (KubernetesClientException ex) {
+            log.error("Couldn't create new project on cluster " + cluster.getClient().getOpenshiftUrl());
+            return FALSE;
+        }
+
+        // Verify that the project was created
+        return waitFor(() -> cluster.getClient().projects().withName(namespace).get() != null, 60,
+            "Couldn't verify that the project has been created on cluster " + cluster.getClient().getOpenshiftUrl());
+    }
+
+    /**
+     * Deploy the list containing resources necessary for the database necessary for the sample application. <br/>
+     *
+     * @return true if everything went well, otherwise false
+     */
+    private boolean deployDatabase() {
+        try {
+            KubernetesList list = manifests.get(DATABASE_LIST_URL, KubernetesList.class);
+            cluster.getClient().lists().inNamespace(namespace).create(list);
+        } catch (KubernetesClientException ex) {
+            log.error("Couldn't create the database list: " + ex.getMessage(), ex);
+            return false;
+        } catch (IllegalStateException ex) {
+            log.error("Couldn't load the database list: " + ex.getMessage());
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Allow up to 10 minutes for the verification that all the database resources were created. <br/>
+     *
+     * @return future completed with true if everything went well, otherwise false
+     */
+    private CompletableFuture<Boolean> verifyDatabaseDeployed() {
+        return waitFor(() -> {
+            boolean service = cache.contains(Service.class, DATABASE_NAME);
+
+            boolean persistentVolumeClaim = cache.contains(PersistentVolumeClaim.class, DATABASE_NAME);
+
+            boolean deploymentConfig = cache.contains(DeploymentConfig.class, DATABASE_NAME);
+
+            boolean pod = cache.list(Pod.class)
+                .stream()
+                .anyMatch(p -> p.getMetadata().getName().contains(DATABASE_NAME)
+                    && !p.getMetadata().getName().contains("deploy")
+                    && p.getStatus().getContainerStatuses().stream().anyMatch(ContainerStatus::getReady));
+
+            return service && persistentVolumeClaim && deploymentConfig && pod;
+        }, 600,
+            "Couldn't verify the database resources in time on cluster " + cluster.getClient().getOpenshiftUrl());
+    }
+
+    /**
+     * Create and process the template for the sample application, use the list returned by the template processing to create all the resources. <br/>
+     * Needs to find the database's service IP address.
+     *
+     * @return true if everything went well, otherwise false
+     */
+    private boolean deploySampleApp() {
+        // Create map for template parameters
+        Map<String, String> params = new HashMap<>();
+        params.put("APP_NAME", SAMPLE_APP_NAME);
+
+        // Try to find the database's service IP address
+        String databaseServiceIP;
+        try {
+            Optional<Service> databaseService = cache.list(Service.class)
+                .stream()
+                .filter(svc -> svc.getMetadata().getName().contains(DATABASE_NAME))
+                .findFirst();
+            if (databaseService.isPresent()) {
+                databaseServiceIP = databaseService.get().getSpec().getClusterIP();
+            } else {
+                log.error("Couldn't find the database's service on cluster " + cluster.getClient().getOpenshiftUrl());
+                return false;
+            }
+        } catch (KubernetesClientException ex) {
+            log.error("Couldn't retrieve the database's service: " + ex.getMessage());
+            return false;
+        }
+        params.put("DB_SERVICE_IP", databaseServiceIP);
+
+        // Deploy resources using the template
+        try {
+            Template template = manifests.get(SAMPLE_APP_URL, Template.class);
+            cluster.getClient().templates().inNamespace(namespace).createOrReplace(template);
+            KubernetesList list = cluster.getClient().templates().inNamespace(namespace).withName(template.getMetadata().getName()).process(params);
+            cluster.getClient().lists().inNamespace(namespace).create(list);
+        } catch (KubernetesClientException ex) {
+            log.error("Couldn't deploy from template: " + ex.getMessage());
+            return false;
+        } catch (IllegalStateException ex) {
+            log.error("Couldn't load the sample application template: " + ex.getMessage());
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Allow up to 10 minutes for the verification that all the sample application resources were created. <br/>
+     * Besides the whole verification, records how long it took to build the sample application's image and to create its route.
+     *
+     * @return future completed with true if everything went well, otherwise false
+     */
+    private CompletableFuture<Boolean> verifySampleAppDeployed() {
+        StageTimer.Stage imageBuild = stages.start(STAGE_IMAGE_BUILD);
+        StageTimer.Stage routeReady = stages.start(STAGE_ROUTE_READY);
+
+        return stages.timeAsync(STAGE_SAMPLE_APP_READY, () -> waitFor(() -> {
+            boolean service = cache.contains(Service.class, SAMPLE_APP_NAME);
+
+            boolean route = cache.contains(Route.class, SAMPLE_APP_NAME);
+            if (route) {
+                routeReady.finish(true);
+            }
+
+            boolean imageBuilt = cache.list(ImageStream.class)
+                .stream()
+                .anyMatch(is -> SAMPLE_APP_NAME.equals(is.getMetadata().getName())
+                    && is.getStatus() != null
+                    && is.getStatus().getTags() != null
+                    && !is.getStatus().getTags().isEmpty());
+            if (imageBuilt) {
+                imageBuild.finish(true);
+            }
+
+            boolean deploymentConfig = cache.contains(DeploymentConfig.class, SAMPLE_APP_NAME);
+
+            boolean pod = cache.list(Pod.class)
+                .stream()
+                .filter(p -> {
+                    String name = p.getMetadata().getName();
+                    return name.contains(SAMPLE_APP_NAME)
+                        && !name.contains("deploy")
+                        && !name.contains("build")
+                        && p.getStatus().getContainerStatuses().stream().anyMatch(ContainerStatus::getReady);
+                })
+                .findFirst()
+                .map(p -> watchLog(p.getMetadata().getName()).hasMatched(TABLE_CREATED_MARKER))
+                .orElse(false);
+
+            boolean buildConfig = cache.contains(BuildConfig.class, SAMPLE_APP_NAME);
+
+            boolean baseImageStream = cache.contains(ImageStream.class, "openjdk-11");
+
+            boolean sampleAppImageStream = cache.contains(ImageStream.class, SAMPLE_APP_NAME);
+
+            return service && route && deploymentConfig && pod && buildConfig && baseImageStream && sampleAppImageStream;
+        }, 600,
+            "Didn't verify the sample app resources in time on cluster: " + cluster.getClient().getOpenshiftUrl()))
+            .whenComplete((ready, ex) -> {
+                // No effect on the stages that already finished
+                imageBuild.finish(false);
+                routeReady.finish(false);
+            });
+    }
+
+    /**
+     * Find the sample application's route and use it to verify the application is running by using its REST endpoints. <br/>
+     *
+     * @return true if everything went well, otherwise false
+     */
+    private boolean verifySampleAppWorking() {
+        Optional<Route> route = cache.withLabels(Route.class, Collections.singletonMap("app", SAMPLE_APP_NAME))
+            .stream()
+            .findFirst();
+
+        if (route.isEmpty()) {
+            log.error("No route associated with the sample application found on cluster " + cluster.getClient().getOpenshiftUrl());
+            return false;
+        }
+
+        String url = "http://" + route.get().getSpec().getHost();
+
+        Response response = HttpUtils.doRequest("POST", url + "/add", Headers.of("Content-Type", "text/plain"), "my first task");
+        if (!response.bodyContains("OK")) {
+            log.error("Sample test application didn't confirm addition of a new element");
+            return false;
+        }
+
+        response = HttpUtils.doRequest("PUT", url + "/update/1", Headers.of("Content-Type", "text/plain"), "changed task");
+        if (!response.bodyContains("OK")) {
+            log.error("Sample test application didn't confirm update of a new element");
+            return false;
+        }
+
+        response = HttpUtils.doRequest("GET", url + "/get/1", null, null);
+        if (!response.bodyContains("changed task")) {
+            log.error("Sample test application didn't return requested element");
+            return false;
+        }
+
+        response = HttpUtils.doRequest("DELETE", url + "/delete/1", null, null);
+        if (!response.bodyContains("OK")) {
+            log.error("Sample test application didn't confirm it deleted first element");
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Verify that the sample application's pod contains all the logs it should after the {@link DeployCheck#verifySampleAppWorking} method. <br/>
+     * Allows up to 30 seconds for the logs to arrive.
+     *
+     * @return future completed with true if everything went well, otherwise false
+     */
+    private CompletableFuture<Boolean> verifySampleAppLog() {
+        if (logWatcher == null) {
+            log.error("The sample application's pod log isn't followed on cluster " + cluster.getClient().getOpenshiftUrl());
+            return FALSE;
+        }
+
+        return waitFor(() -> logWatcher.ensureWatching().allMatched(), 30,
+            "Sample application's pod log doesn't contain all expected messages on cluster " + cluster.getClient().getOpenshiftUrl());
+    }
+
+    /**
+     * Follow the log of the pod, replacing the watcher of any previous pod of the sample application.
+     *
+     * @throws KubernetesClientException when the log can't be followed
+     */
+    private PodLogWatcher watchLog(String pod) {
+        if (logWatcher == null || !logWatcher.getPod().equals(pod)) {
+            if (logWatcher != null) {
+                logWatcher.close();
+            }
+            logWatcher = new PodLogWatcher(cluster.getClient(), namespace, pod, LOG_MARKERS);
+        }
+        return logWatcher.ensureWatching();
+    }
+
+    /**
+     * Wait for the condition without blocking the current thread. The wait ends early when the run is cancelled.
+     *
+     * @return future completed with true if the condition was met in time, otherwise false
+     */
+    private CompletableFuture<Boolean> waitFor(Callable<Boolean> condition, int seconds, String timeoutMessage) {
+        if (cancelled) {
+            return FALSE;
+        }
+
+        CompletableFuture<Void> wait = Utils.waitFor(condition, seconds, executor);
+        pending = wait;
+        if (cancelled) {
+            wait.cancel(true);
+        }
+
+        return wait.handle((result, ex) -> {
+            if (ex instanceof CancellationException) {
+                log.warn("Sample application check cancelled on cluster " + cluster.getClient().getOpenshiftUrl());
+                return false;
+            } else if (ex != null) {
+                log.error(timeoutMessage);
+                return false;
+            }
+            return true;
+        });
+    }
+}
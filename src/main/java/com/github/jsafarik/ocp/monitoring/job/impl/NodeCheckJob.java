@@ -1,71 +1,43 @@
 package com.github.jsafarik.ocp.monitoring.job.impl;
 
 import org.quartz.DisallowConcurrentExecution;
-import org.quartz.JobExecutionContext;
-import org.quartz.JobExecutionException;
 
 import com.github.jsafarik.ocp.monitoring.cluster.Cluster;
-import com.github.jsafarik.ocp.monitoring.cluster.Kubeconfig;
-import com.github.jsafarik.ocp.monitoring.job.MonitoringJob;
+import com.github.jsafarik.ocp.monitoring.cluster.NodeWatcher;
+import com.github.jsafarik.ocp.monitoring.job.ClusterCheckJob;
 
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
-import io.fabric8.kubernetes.api.model.Node;
 import io.fabric8.kubernetes.client.KubernetesClientException;
 import lombok.extern.jbosslog.JBossLog;
 
 /**
- * Check each cluster's nodes. Checks how many nodes each cluster have and how many of them are in a "ready" state. <br/><br/>
- * Sets the {@link NodeCheckJob#METRIC_NODE_COUNT_NAME} and {@link NodeCheckJob#METRIC_READY_NODE_COUNT_NAME} metrics on each cluster.
+ * Check each cluster's nodes. Checks how many nodes each cluster have, how many of them are in a "ready" state
+ * and how many of them report each of the {@link NodeWatcher#CONDITIONS}. <br/>
+ * The counts are kept up to date by the cluster's {@link NodeWatcher}, this job only makes sure the watcher is running. <br/><br/>
+ * Sets the {@link NodeCheckJob#METRIC_NODE_COUNT_NAME}, {@link NodeCheckJob#METRIC_READY_NODE_COUNT_NAME}
+ * and {@link NodeCheckJob#METRIC_NODE_CONDITION_COUNT_NAME} metrics on each cluster.
  */
 @JBossLog
 @DisallowConcurrentExecution
-public class NodeCheckJob extends MonitoringJob {
+public class NodeCheckJob extends ClusterCheckJob {
 
     public static final String METRIC_NODE_COUNT_NAME = "cluster.node.count";
     public static final String METRIC_READY_NODE_COUNT_NAME = "cluster.ready.node.count";
+    public static final String METRIC_NODE_CONDITION_COUNT_NAME = "cluster.node.condition.count";
 
     @Override
-    public void execute(JobExecutionContext context) throws JobExecutionException {
-        for (Kubeconfig kubeconfig : getManager().getKubeconfigs()) {
-            for (Cluster cluster : kubeconfig.getClusters()) {
-                List<Node> nodes = getAllNodes(cluster);
-                if (nodes == null) {
-                    continue;
-                }
-                cluster.updateMetric(METRIC_NODE_COUNT_NAME, nodes.size());
-
-                nodes = getWorkingNodes(nodes);
-                cluster.updateMetric(METRIC_READY_NODE_COUNT_NAME, nodes.size());
+    protected CompletionStage<Boolean> check(Cluster cluster) {
+        NodeWatcher watcher = cluster.getNodeWatcher();
+        if (!watcher.isWatching()) {
+            try {
+                watcher.start();
+            } catch (KubernetesClientException ex) {
+                log.error("Couldn't watch the nodes on cluster " + cluster.getClient().getOpenshiftUrl() + ": " + ex.getMessage());
+                return CompletableFuture.completedFuture(false);
             }
         }
-    }
-
-    /**
-     * Fetch all the nodes in a cluster
-     */
-    private List<Node> getAllNodes(Cluster cluster) {
-        try {
-            return cluster.getClient()
-                .nodes()
-                .list()
-                .getItems();
-        } catch (KubernetesClientException ex) {
-            log.error("Couldn't retrieve node list");
-            return null;
-        }
-    }
-
-    /**
-     * Filter the fetched nodes with the "ready" state set to true
-     */
-    private List<Node> getWorkingNodes(List<Node> nodes) {
-        return nodes.stream().filter(node ->
-            node.getStatus()
-                .getConditions()
-                .stream()
-                .anyMatch(condition -> "ready".equals(condition.getType().toLowerCase()) && Boolean.parseBoolean(condition.getStatus()))
-        ).collect(Collectors.toList());
+        return CompletableFuture.completedFuture(true);
     }
 }
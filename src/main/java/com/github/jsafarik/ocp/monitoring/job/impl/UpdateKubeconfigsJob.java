@@ -4,23 +4,29 @@ import org.quartz.DisallowConcurrentExecution;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 
-import com.github.jsafarik.ocp.monitoring.cluster.Cluster;
 import com.github.jsafarik.ocp.monitoring.cluster.Kubeconfig;
+import com.github.jsafarik.ocp.monitoring.cluster.KubeconfigSources;
 import com.github.jsafarik.ocp.monitoring.job.MonitoringJob;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import io.fabric8.kubernetes.api.model.Config;
 import io.fabric8.kubernetes.api.model.NamedContext;
 import io.fabric8.kubernetes.client.internal.KubeConfigUtils;
 import lombok.extern.jbosslog.JBossLog;
 
 /**
- * This job does not check any aspect of any cluster, but updates the list of kubeconfigs and clusters.
+ * This job does not check any aspect of any cluster, but updates the list of kubeconfigs and clusters. <br/>
+ * All kubeconfigs are fetched at once, each of them is then reconciled on its own, so a kubeconfig which can't be fetched
+ * or parsed doesn't affect the others. Kubeconfigs which are no longer configured are removed together with their clusters. <br/>
+ * Kubeconfigs whose contents and context filters didn't change since the last update are skipped, in the others only
+ * the added, removed and changed contexts are reconciled (see {@link Kubeconfig#reconcile}).
  */
 @JBossLog
 @DisallowConcurrentExecution
@@ -28,29 +34,48 @@ public class UpdateKubeconfigsJob extends MonitoringJob {
 
     @Override
     public void execute(JobExecutionContext context) throws JobExecutionException {
-        Map<String, List<String>> kubeconfigsWithFilters = getConfiguration().getKubeconfigsWithFilters();
+        List<String> tracked = getManager().getKubeconfigs().stream().map(Kubeconfig::getUrl).collect(Collectors.toList());
+        Map<String, List<String>> kubeconfigsWithFilters = KubeconfigSources.expand(getConfiguration().getKubeconfigsWithFilters(), tracked);
+        getManager().retainKubeconfigs(kubeconfigsWithFilters.keySet());
+
+        Map<Kubeconfig, CompletableFuture<Boolean>> updates = new LinkedHashMap<>();
         for (String kubeconfigUrl : kubeconfigsWithFilters.keySet()) {
             Kubeconfig kubeconfig = this.getManager().getKubeconfig(kubeconfigUrl);
-            kubeconfig.updateContents();
-            List<Cluster> clusters = new ArrayList<>();
-            for (NamedContext ctx : getContexts(kubeconfig.getContents(), kubeconfigsWithFilters.get(kubeconfigUrl))) {
-                clusters.add(kubeconfig.getCluster(ctx.getName()));
-            }
-            kubeconfig.retainClusters(clusters);
+            updates.put(kubeconfig, kubeconfig.updateContentsAsync());
         }
+
+        updates.forEach((kubeconfig, update) -> {
+            try {
+                update.join();
+                reconcile(kubeconfig, kubeconfigsWithFilters.get(kubeconfig.getUrl()));
+            } catch (RuntimeException ex) {
+                log.error("Couldn't update kubeconfig " + kubeconfig.getUrl() + ": " + ex.getMessage(), ex);
+            }
+        });
     }
 
-    /**
-     * Transform the kubeconfig content to a list of contexts
-     */
-    private List<NamedContext> getContexts(String kubeconfigContents, List<String> filters) {
-        List<NamedContext> contexts;
+    private void reconcile(Kubeconfig kubeconfig, List<String> filters) {
+        if (!kubeconfig.needsReconciliation(filters)) {
+            log.debug("Kubeconfig " + kubeconfig.getUrl() + " didn't change, skipping");
+            return;
+        }
 
+        Config config;
         try {
-            contexts = KubeConfigUtils.parseConfigFromString(kubeconfigContents).getContexts();
+            config = KubeConfigUtils.parseConfigFromString(kubeconfig.getContents());
         } catch (IOException e) {
-            return new ArrayList<>();
+            log.error("Couldn't parse kubeconfig " + kubeconfig.getUrl() + ": " + e.getMessage());
+            return;
         }
+        kubeconfig.reconcile(config, getContexts(config, filters));
+        kubeconfig.reconciled(filters);
+    }
+
+    /**
+     * Get the contexts of the kubeconfig matching all filters
+     */
+    static List<NamedContext> getContexts(Config config, List<String> filters) {
+        List<NamedContext> contexts = config.getContexts() == null ? List.of() : config.getContexts();
 
         if (filters != null && filters.size() > 0) {
             Stream<NamedContext> stream = contexts.stream();
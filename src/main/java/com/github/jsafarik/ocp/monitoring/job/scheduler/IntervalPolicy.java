@@ -0,0 +1,72 @@
+package com.github.jsafarik.ocp.monitoring.job.scheduler;
+
+import com.github.jsafarik.ocp.monitoring.config.Configuration;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides how often a cluster is checked by a job based on the cluster's recent history. <br/>
+ * Right after the cluster's state changed, it is checked with the tight interval ({@link Configuration#getIntervalMinFactor()}
+ * multiple of the job's period) to confirm the change quickly. Every check during which the state stayed the same makes
+ * the interval {@link IntervalPolicy#BACKOFF} times longer, up to the {@link Configuration#getIntervalMaxFactor()} multiple of the job's period.
+ */
+class IntervalPolicy {
+
+    static final double BACKOFF = 1.5;
+
+    /**
+     * The factors are read on each use, so they follow the configuration reloads
+     */
+    private final Configuration configuration;
+
+    /**
+     * Cluster ID mapped to the time of the last change of its state in milliseconds
+     */
+    private final Map<String, Long> lastChange = new ConcurrentHashMap<>();
+
+    IntervalPolicy(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Record that the state of the cluster just changed.
+     */
+    void changed(String clusterId) {
+        lastChange.put(clusterId, System.currentTimeMillis());
+    }
+
+    void forget(String clusterId) {
+        lastChange.remove(clusterId);
+    }
+
+    /**
+     * Interval used right after the state of a cluster changed.
+     */
+    int tightInterval(int period) {
+        return (int) Math.max(1, Math.min(period, Math.round(period * configuration.getIntervalMinFactor())));
+    }
+
+    /**
+     * Longest interval a stable cluster backs off to.
+     */
+    int maxInterval(int period) {
+        return (int) Math.max(period, Math.round(period * configuration.getIntervalMaxFactor()));
+    }
+
+    /**
+     * Interval until the next check of the cluster after a check fired at the given time.
+     *
+     * @param period default period of the job
+     * @param current interval the check fired with
+     * @param fireTime time the check fired in milliseconds
+     */
+    int nextInterval(String clusterId, int period, int current, long fireTime) {
+        Long changed = lastChange.get(clusterId);
+        if (changed != null && changed >= fireTime - current * 1000L) {
+            return tightInterval(period);
+        }
+        int max = maxInterval(period);
+        return Math.min(max, Math.max(current + 1, (int) Math.ceil(current * BACKOFF)));
+    }
+}
@@ -2,48 +2,89 @@ package com.github.jsafarik.ocp.monitoring.job.scheduler;
 
 import org.quartz.JobBuilder;
 import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobKey;
 import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
 import org.quartz.SimpleScheduleBuilder;
+import org.quartz.SimpleTrigger;
 import org.quartz.Trigger;
 import org.quartz.TriggerBuilder;
+import org.quartz.TriggerKey;
+import org.quartz.listeners.JobListenerSupport;
 
+import com.github.jsafarik.ocp.monitoring.cluster.Cluster;
+import com.github.jsafarik.ocp.monitoring.cluster.ClusterListener;
+import com.github.jsafarik.ocp.monitoring.cluster.KubeconfigWatcher;
+import com.github.jsafarik.ocp.monitoring.cluster.Manager;
+import com.github.jsafarik.ocp.monitoring.config.Configuration;
+import com.github.jsafarik.ocp.monitoring.config.ConfigurationListener;
+import com.github.jsafarik.ocp.monitoring.config.ConfigurationSnapshot;
+import com.github.jsafarik.ocp.monitoring.job.ClusterCheckJob;
 import com.github.jsafarik.ocp.monitoring.job.MonitoringJob;
 import com.github.jsafarik.ocp.monitoring.job.factory.MonitoringJobFactory;
+import com.github.jsafarik.ocp.monitoring.job.impl.AccessibilityJob;
+import com.github.jsafarik.ocp.monitoring.job.impl.DeployCheckJob;
+import com.github.jsafarik.ocp.monitoring.job.impl.UpdateKubeconfigsJob;
 import com.github.jsafarik.ocp.monitoring.job.scheduler.listeners.JobListener;
 import com.github.jsafarik.ocp.monitoring.job.scheduler.listeners.TriggerListener;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Observes;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.List;
 import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 import io.quarkus.runtime.StartupEvent;
 import lombok.extern.jbosslog.JBossLog;
 
 /**
- * Class that creates all JobDetails and Triggers on start of the application. <br/>
+ * Class that creates all JobDetails and Triggers. <br/>
  * All classes extending MonitoringJob and stated in the "resources/META-INF/services/com.github.jsafarik.ocp.monitoring.job.MonitoringJob"
+ * are scheduled. Jobs extending {@link ClusterCheckJob} are scheduled separately for each cluster when the cluster is added
+ * and unscheduled when the cluster is removed, other jobs are scheduled once on start of the application. <br/>
+ * Each cluster's trigger starts with an offset derived from the cluster's ID, so the checks of all clusters are spread over the period
+ * and each cluster keeps its offset across restarts. <br/>
+ * The interval of each cluster's trigger adapts to the cluster's history (see {@link IntervalPolicy}): after every execution
+ * the trigger of a stable cluster backs off, while a change of the cluster's accessibility or working state reschedules
+ * all its triggers to the tight interval. <br/>
+ * When a reload of the configuration changes the kubeconfigs or their filters, or a local kubeconfig changes, the kubeconfigs are updated right away.
  */
 @ApplicationScoped
 @JBossLog
-public class JobScheduler {
+public class JobScheduler implements ClusterListener, ConfigurationListener {
 
     private Scheduler quartzScheduler;
 
-    public JobScheduler(Scheduler scheduler, MonitoringJobFactory factory, JobListener jobListener, TriggerListener triggerListener)
-        throws SchedulerException {
+    private List<MonitoringJob> jobs;
+
+    private IntervalPolicy intervalPolicy;
+
+    public JobScheduler(Scheduler scheduler, MonitoringJobFactory factory, JobListener jobListener, TriggerListener triggerListener,
+        Manager manager, Configuration configuration, KubeconfigWatcher kubeconfigWatcher) throws SchedulerException {
         this.quartzScheduler = scheduler;
         this.quartzScheduler.setJobFactory(factory);
         this.quartzScheduler.getListenerManager().addJobListener(jobListener);
+        this.quartzScheduler.getListenerManager().addJobListener(new IntervalListener());
         this.quartzScheduler.getListenerManager().addTriggerListener(triggerListener);
+        this.intervalPolicy = new IntervalPolicy(configuration);
+        this.jobs = StreamSupport.stream(ServiceLoader.load(MonitoringJob.class).spliterator(), false).collect(Collectors.toList());
+        manager.addListener(this);
+        configuration.addListener(this);
+        kubeconfigWatcher.addListener(this::updateKubeconfigs);
     }
 
     public void registerMonitoringJobs(@Observes StartupEvent event) {
-        StreamSupport.stream(ServiceLoader.load(MonitoringJob.class).spliterator(), false).forEach(job -> {
+        jobs.stream().filter(job -> !(job instanceof ClusterCheckJob)).forEach(job -> {
             JobDetail j = JobBuilder.newJob(job.getClass())
                 .withIdentity(job.getClass().getSimpleName(), job.getClass().getPackageName())
                 .build();
@@ -65,4 +106,178 @@ public class JobScheduler {
             }
         });
     }
+
+    /**
+     * Schedule all cluster check jobs for the new cluster.
+     */
+    @Override
+    public void clusterAdded(Cluster cluster) {
+        jobs.stream().filter(job -> job instanceof ClusterCheckJob).forEach(job -> {
+            JobKey key = jobKey(job, cluster);
+
+            JobDetail j = JobBuilder.newJob(job.getClass())
+                .withIdentity(key)
+                .usingJobData(ClusterCheckJob.KUBECONFIG_URL_KEY, cluster.getKubeconfig().getUrl())
+                .usingJobData(ClusterCheckJob.CONTEXT_KEY, cluster.getContext())
+                .build();
+
+            Trigger trigger = TriggerBuilder.newTrigger()
+                .withIdentity(key.getName(), key.getGroup())
+                .startAt(startTime(job, cluster))
+                .withSchedule(
+                    SimpleScheduleBuilder.simpleSchedule()
+                        .withIntervalInSeconds(job.getPeriodInSeconds())
+                        .withMisfireHandlingInstructionNextWithRemainingCount()
+                        .repeatForever())
+                .build();
+
+            try {
+                if (!quartzScheduler.checkExists(key)) {
+                    quartzScheduler.scheduleJob(j, trigger);
+                }
+            } catch (SchedulerException e) {
+                log.error("Couldn't schedule job " + key + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Unschedule all cluster check jobs of the removed cluster.
+     */
+    @Override
+    public void clusterRemoved(Cluster cluster) {
+        jobs.stream().filter(job -> job instanceof ClusterCheckJob).forEach(job -> {
+            JobKey key = jobKey(job, cluster);
+            try {
+                quartzScheduler.deleteJob(key);
+            } catch (SchedulerException e) {
+                log.error("Couldn't unschedule job " + key + ": " + e.getMessage());
+            }
+        });
+        intervalPolicy.forget(cluster.getId());
+    }
+
+    /**
+     * Reschedule all cluster check jobs of the cluster to the tight interval when its accessibility or working state changes.
+     */
+    @Override
+    public void metricChanged(Cluster cluster, String name, Integer previous, int value) {
+        if (previous == null ||
+            !(AccessibilityJob.METRIC_ACCESSIBILITY_NAME.equals(name) || DeployCheckJob.METRIC_WORKING_NAME.equals(name))) {
+            return;
+        }
+
+        log.info("Cluster " + cluster.getId() + " changed " + name + " from " + previous + " to " + value);
+        intervalPolicy.changed(cluster.getId());
+        jobs.stream().filter(job -> job instanceof ClusterCheckJob).forEach(job -> {
+            JobKey key = jobKey(job, cluster);
+            try {
+                Trigger trigger = quartzScheduler.getTrigger(TriggerKey.triggerKey(key.getName(), key.getGroup()));
+                int tight = intervalPolicy.tightInterval(job.getPeriodInSeconds());
+                if (trigger instanceof SimpleTrigger && ((SimpleTrigger) trigger).getRepeatInterval() > tight * 1000L) {
+                    // Never postpone a check that is already due sooner than the tight interval
+                    Date startAt = new Date(System.currentTimeMillis() + tight * 1000L);
+                    Date nextFireTime = trigger.getNextFireTime();
+                    if (nextFireTime != null && nextFireTime.before(startAt)) {
+                        startAt = nextFireTime;
+                    }
+                    reschedule((SimpleTrigger) trigger, tight, startAt);
+                }
+            } catch (SchedulerException e) {
+                log.error("Couldn't reschedule job " + key + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Run {@link UpdateKubeconfigsJob} now when the kubeconfigs or their filters changed, instead of waiting for its next run.
+     */
+    @Override
+    public void configurationChanged(ConfigurationSnapshot previous, ConfigurationSnapshot current, Set<String> changed) {
+        if (previous.getKubeconfigsWithFilters().equals(current.getKubeconfigsWithFilters())) {
+            return;
+        }
+        updateKubeconfigs();
+    }
+
+    /**
+     * Run {@link UpdateKubeconfigsJob} now instead of waiting for its next run.
+     */
+    private void updateKubeconfigs() {
+        JobKey key = JobKey.jobKey(UpdateKubeconfigsJob.class.getSimpleName(), UpdateKubeconfigsJob.class.getPackageName());
+        try {
+            quartzScheduler.triggerJob(key);
+        } catch (SchedulerException e) {
+            log.error("Couldn't trigger job " + key + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replace the trigger with one firing with the new interval, the first time at the given time.
+     */
+    private void reschedule(SimpleTrigger trigger, int interval, Date startAt) throws SchedulerException {
+        Trigger updated = trigger.getTriggerBuilder()
+            .startAt(startAt)
+            .withSchedule(
+                SimpleScheduleBuilder.simpleSchedule()
+                    .withIntervalInSeconds(interval)
+                    .withMisfireHandlingInstructionNextWithRemainingCount()
+                    .repeatForever())
+            .build();
+        quartzScheduler.rescheduleJob(trigger.getKey(), updated);
+        log.debug("Job " + trigger.getJobKey() + " rescheduled with interval " + interval + " s");
+    }
+
+    /**
+     * Adjusts the interval of the cluster's trigger after each execution of a cluster check job.
+     */
+    private class IntervalListener extends JobListenerSupport {
+
+        @Override
+        public String getName() {
+            return "OpenShiftMonitoringIntervalListener";
+        }
+
+        @Override
+        public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException) {
+            if (!(context.getJobInstance() instanceof ClusterCheckJob) || !(context.getTrigger() instanceof SimpleTrigger)) {
+                return;
+            }
+
+            MonitoringJob job = (MonitoringJob) context.getJobInstance();
+            SimpleTrigger trigger = (SimpleTrigger) context.getTrigger();
+            int current = (int) (trigger.getRepeatInterval() / 1000);
+            int next = intervalPolicy.nextInterval(context.getJobDetail().getKey().getName(), job.getPeriodInSeconds(), current,
+                context.getFireTime().getTime());
+            if (next != current) {
+                try {
+                    reschedule(trigger, next, new Date(System.currentTimeMillis() + next * 1000L));
+                } catch (SchedulerException e) {
+                    log.error("Couldn't reschedule job " + trigger.getJobKey() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static JobKey jobKey(MonitoringJob job, Cluster cluster) {
+        return JobKey.jobKey(cluster.getId(), job.getClass().getSimpleName());
+    }
+
+    /**
+     * First execution of the job for the cluster. The executions of all clusters are placed on a grid of the job's period
+     * aligned with the epoch, each cluster at an offset derived from its ID. The first execution is never earlier than the job's delay.
+     */
+    private static Date startTime(MonitoringJob job, Cluster cluster) {
+        long period = job.getPeriodInSeconds() * 1000L;
+        long hash = UUID.nameUUIDFromBytes((job.getClass().getName() + "/" + cluster.getId()).getBytes(StandardCharsets.UTF_8))
+            .getLeastSignificantBits();
+        long offset = Math.floorMod(hash, period);
+
+        long earliest = System.currentTimeMillis() + job.getDelayInSeconds() * 1000L;
+        long start = earliest - Math.floorMod(earliest, period) + offset;
+        if (start < earliest) {
+            start += period;
+        }
+        return new Date(start);
+    }
 }
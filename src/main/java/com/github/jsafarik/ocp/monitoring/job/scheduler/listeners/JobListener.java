@@ -17,7 +17,7 @@ public class JobListener implements org.quartz.JobListener {
 
     @Override
     public void jobToBeExecuted(JobExecutionContext context) {
-        log.info("Job " + context.getJobDetail().getKey().getName() + " to be executed");
+        log.debug("Job " + context.getJobDetail().getKey() + " to be executed");
     }
 
     @Override
@@ -27,6 +27,6 @@ public class JobListener implements org.quartz.JobListener {
 
     @Override
     public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException) {
-        log.info("Job " + context.getJobDetail().getKey().getName() + " was executed");
+        log.debug("Job " + context.getJobDetail().getKey() + " was executed");
     }
 }
@@ -26,7 +26,7 @@ public class TriggerListener implements org.quartz.TriggerListener {
 
     @Override
     public void triggerMisfired(Trigger trigger) {
-        log.warn("Trigger " + trigger.getJobKey().getName() + " misfired!");
+        log.warn("Trigger " + trigger.getKey() + " misfired!");
     }
 
     @Override
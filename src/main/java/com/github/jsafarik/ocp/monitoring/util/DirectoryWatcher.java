@@ -0,0 +1,113 @@
+package com.github.jsafarik.ocp.monitoring.util;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+
+import lombok.extern.jbosslog.JBossLog;
+
+/**
+ * Watches directories for changes of their files and runs the callback once the changes settle. <br/>
+ * Which files are relevant is decided by the given predicate. An overflow and a change of a hidden "..*" entry are always relevant,
+ * as a mounted ConfigMap or Secret is updated by swapping its hidden "..data" link, and no event names the files themselves.
+ * The callback runs on the watcher's own thread.
+ */
+@JBossLog
+public class DirectoryWatcher implements AutoCloseable {
+
+    private static final long SETTLE_MILLIS = 200;
+
+    private final String name;
+
+    private final WatchService watchService;
+
+    private final Map<Path, WatchKey> keys = new ConcurrentHashMap<>();
+
+    /**
+     * @param name name of the watcher's thread, used in logs
+     * @param relevant tests whether the change of a file (given by its directory and its name) is relevant
+     * @param onChange called after relevant changes
+     * @throws IOException if the watch service can't be created
+     */
+    public DirectoryWatcher(String name, BiPredicate<Path, String> relevant, Runnable onChange) throws IOException {
+        this.name = name;
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        Thread watcher = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    while (key != null) {
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            changed |= event.context() == null || event.context().toString().startsWith("..")
+                                || relevant.test((Path) key.watchable(), event.context().toString());
+                        }
+                        key.reset();
+                        // A single save often consists of several events (truncate, write), call back once they settle
+                        key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                    if (changed) {
+                        try {
+                            onChange.run();
+                        } catch (RuntimeException ex) {
+                            log.error("Handling change in " + name + " failed: " + ex.getMessage(), ex);
+                        }
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                log.debug("Stopped " + name);
+            }
+        }, name);
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Start watching the directory, unless it is already watched.
+     *
+     * @throws IOException if the directory can't be watched
+     */
+    public void watch(Path directory) throws IOException {
+        if (!keys.containsKey(directory)) {
+            keys.put(directory, directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+        }
+    }
+
+    /**
+     * Stop watching all directories except the given ones.
+     */
+    public void retain(Set<Path> directories) {
+        keys.keySet().removeIf(directory -> {
+            if (!directories.contains(directory)) {
+                keys.get(directory).cancel();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    public boolean isWatching(Path directory) {
+        return keys.containsKey(directory);
+    }
+
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException ex) {
+            log.debug("Couldn't close watch service of " + name + ": " + ex.getMessage());
+        }
+    }
+}
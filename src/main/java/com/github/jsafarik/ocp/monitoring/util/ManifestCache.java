@@ -0,0 +1,205 @@
+package com.github.jsafarik.ocp.monitoring.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.jsafarik.ocp.monitoring.config.Configuration;
+import com.github.jsafarik.ocp.monitoring.util.http.HttpUtils;
+import com.github.jsafarik.ocp.monitoring.util.http.Response;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.fabric8.kubernetes.client.utils.Serialization;
+import lombok.extern.jbosslog.JBossLog;
+import okhttp3.Headers;
+
+/**
+ * Cache of the manifests deployed to the clusters, shared by all clusters. <br/>
+ * Each manifest is downloaded and parsed once. After {@link Configuration#getManifestTtl()} it is revalidated by a conditional request
+ * (If-None-Match / If-Modified-Since) and parsed again only if it changed. When the manifest can't be downloaded, the cached copy is used. <br/>
+ * Before the first download, the manifest is seeded from the file with the same name in {@link Configuration#getManifestDirectory()},
+ * or from the classpath resource with the same name in the "manifests" directory, so the manifests are available even without
+ * access to their URLs. <br/>
+ * The parsed manifest is kept as a tree and each caller gets its own object bound from it, so the callers can modify it freely. <br/>
+ * {@link ManifestCache#get(String, Class)} blocks on the download only when there is no copy of the manifest at all. An expired manifest
+ * is revalidated by one of its callers outside of the lock, the concurrent callers meanwhile get the cached copy.
+ */
+@ApplicationScoped
+@JBossLog
+public class ManifestCache {
+
+    private static final String CLASSPATH_DIRECTORY = "manifests/";
+
+    private final Configuration configuration;
+
+    private final Map<String, Manifest> manifests = new ConcurrentHashMap<>();
+
+    public ManifestCache(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Get the manifest downloaded from the URL.
+     *
+     * @param type type of the manifest, e.g. KubernetesList or Template
+     * @throws IllegalStateException when the manifest is neither cached nor available
+     */
+    public <T> T get(String url, Class<T> type) {
+        JsonNode tree = manifests.computeIfAbsent(url, Manifest::new).get();
+        try {
+            return Serialization.jsonMapper().treeToValue(tree, type);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Manifest " + url + " is not a valid " + type.getSimpleName() + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    private class Manifest {
+
+        private final String url;
+
+        private JsonNode tree;
+
+        private String etag;
+
+        private String lastModified;
+
+        /**
+         * Time in milliseconds after which the manifest has to be revalidated
+         */
+        private long validUntil;
+
+        /**
+         * Whether a caller is revalidating the cached copy
+         */
+        private boolean revalidating;
+
+        Manifest(String url) {
+            this.url = url;
+        }
+
+        JsonNode get() {
+            synchronized (this) {
+                if (tree == null) {
+                    seed();
+                }
+                if (tree == null) {
+                    // Nothing to fall back to, the concurrent callers wait for the download
+                    revalidate();
+                    if (tree == null) {
+                        throw new IllegalStateException("Manifest " + url + " is not available");
+                    }
+                    return tree;
+                }
+                if (revalidating || System.currentTimeMillis() < validUntil) {
+                    return tree;
+                }
+                revalidating = true;
+            }
+
+            try {
+                revalidate();
+            } finally {
+                synchronized (this) {
+                    revalidating = false;
+                }
+            }
+            synchronized (this) {
+                return tree;
+            }
+        }
+
+        /**
+         * Load the local copy of the manifest, if there is one.
+         */
+        private void seed() {
+            String name = url.substring(url.lastIndexOf('/') + 1);
+
+            String directory = configuration.getManifestDirectory();
+            if (!directory.isEmpty() && Files.isRegularFile(Path.of(directory, name))) {
+                try {
+                    tree = parse(Files.readString(Path.of(directory, name)));
+                    log.info("Manifest " + url + " seeded from " + Path.of(directory, name));
+                } catch (IOException ex) {
+                    log.error("Couldn't read manifest " + Path.of(directory, name) + ": " + ex.getMessage());
+                }
+                return;
+            }
+
+            try (InputStream resource = Thread.currentThread().getContextClassLoader().getResourceAsStream(CLASSPATH_DIRECTORY + name)) {
+                if (resource != null) {
+                    tree = parse(new String(resource.readAllBytes(), StandardCharsets.UTF_8));
+                    log.info("Manifest " + url + " seeded from classpath");
+                }
+            } catch (IOException ex) {
+                log.error("Couldn't read manifest " + CLASSPATH_DIRECTORY + name + " from classpath: " + ex.getMessage());
+            }
+        }
+
+        /**
+         * Download the manifest if it changed since the last download.
+         */
+        private void revalidate() {
+            Headers.Builder headers = new Headers.Builder();
+            synchronized (this) {
+                if (etag != null) {
+                    headers.add("If-None-Match", etag);
+                }
+                if (lastModified != null) {
+                    headers.add("If-Modified-Since", lastModified);
+                }
+            }
+
+            Response response = HttpUtils.doRequest("GET", url, headers.build(), null);
+            JsonNode downloaded = null;
+            if (response.getCode() == 200 && response.getBody() != null) {
+                try {
+                    downloaded = parse(response.getBody());
+                } catch (IOException ex) {
+                    log.error("Couldn't parse manifest " + url + ": " + ex.getMessage());
+                }
+            }
+            apply(response, downloaded);
+        }
+
+        /**
+         * Update the cached copy by the response of the revalidation.
+         *
+         * @param downloaded the parsed manifest, null if the response didn't contain a valid one
+         */
+        private synchronized void apply(Response response, JsonNode downloaded) {
+            if (response.getCode() == 304) {
+                log.debug("Manifest " + url + " not modified");
+            } else if (downloaded != null) {
+                tree = downloaded;
+                etag = response.getHeaders().get("ETag");
+                lastModified = response.getHeaders().get("Last-Modified");
+                log.info("Manifest " + url + " downloaded");
+            } else if (response.getCode() == 200 && response.getBody() != null) {
+                if (tree == null) {
+                    // Try again on the next use
+                    return;
+                }
+                log.warn("Using the cached copy of manifest " + url);
+            } else {
+                log.warn("Couldn't download manifest " + url + " (" + response.getCode() + ")" + (tree != null ? ", using the cached copy" : ""));
+                if (tree == null) {
+                    // Try again on the next use
+                    return;
+                }
+            }
+
+            validUntil = System.currentTimeMillis() + configuration.getManifestTtl() * 1000L;
+        }
+
+        private JsonNode parse(String content) throws IOException {
+            return Serialization.yamlMapper().readTree(content);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.jsafarik.ocp.monitoring.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Finds any of up to 32 markers in a stream of bytes in a single pass (Aho-Corasick automaton). <br/>
+ * The matcher itself is immutable, the caller keeps the current state and feeds the bytes one by one with {@link MarkerMatcher#next(int, byte)},
+ * so the memory doesn't depend on the length of the stream. The markers are matched against their UTF-8 encoding.
+ */
+public class MarkerMatcher {
+
+    private final List<String> markers;
+
+    /**
+     * Transition from each state for each byte
+     */
+    private final int[][] transitions;
+
+    /**
+     * Bit mask of the markers ending in each state
+     */
+    private final int[] matches;
+
+    public MarkerMatcher(List<String> markers) {
+        if (markers.size() > Integer.SIZE) {
+            throw new IllegalArgumentException("At most " + Integer.SIZE + " markers are supported");
+        }
+        this.markers = List.copyOf(markers);
+
+        // Trie of the markers
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> output = new ArrayList<>();
+        trie.add(newState());
+        output.add(0);
+        for (int i = 0; i < markers.size(); i++) {
+            int state = 0;
+            for (byte b : markers.get(i).getBytes(StandardCharsets.UTF_8)) {
+                int next = trie.get(state)[b & 0xFF];
+                if (next < 0) {
+                    next = trie.size();
+                    trie.get(state)[b & 0xFF] = next;
+                    trie.add(newState());
+                    output.add(0);
+                }
+                state = next;
+            }
+            output.set(state, output.get(state) | (1 << i));
+        }
+
+        // Complete the transitions using the failure links, breadth first so the failure state is always completed first
+        transitions = trie.toArray(new int[0][]);
+        matches = output.stream().mapToInt(Integer::intValue).toArray();
+        int[] failure = new int[transitions.length];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int b = 0; b < 256; b++) {
+            int next = transitions[0][b];
+            if (next < 0) {
+                transitions[0][b] = 0;
+            } else {
+                failure[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            matches[state] |= matches[failure[state]];
+            for (int b = 0; b < 256; b++) {
+                int next = transitions[state][b];
+                if (next < 0) {
+                    transitions[state][b] = transitions[failure[state]][b];
+                } else {
+                    failure[next] = transitions[failure[state]][b];
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    public List<String> getMarkers() {
+        return markers;
+    }
+
+    /**
+     * @return bit mask with the bit of the marker set, the bit order is the order of the markers
+     */
+    public int bit(String marker) {
+        int index = markers.indexOf(marker);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown marker " + marker);
+        }
+        return 1 << index;
+    }
+
+    /**
+     * @return bit mask with the bits of all markers set
+     */
+    public int all() {
+        return markers.size() == Integer.SIZE ? -1 : (1 << markers.size()) - 1;
+    }
+
+    /**
+     * State before any byte was read
+     */
+    public int initial() {
+        return 0;
+    }
+
+    /**
+     * @return state after reading the byte in the given state
+     */
+    public int next(int state, byte b) {
+        return transitions[state][b & 0xFF];
+    }
+
+    /**
+     * @return bit mask of the markers ending with the last byte read to get to the state
+     */
+    public int matches(int state) {
+        return matches[state];
+    }
+
+    private static int[] newState() {
+        int[] state = new int[256];
+        Arrays.fill(state, -1);
+        return state;
+    }
+}
@@ -1,6 +1,16 @@
 package com.github.jsafarik.ocp.monitoring.util;
 
+import java.time.Duration;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import lombok.extern.jbosslog.JBossLog;
@@ -8,28 +18,99 @@ import lombok.extern.jbosslog.JBossLog;
 @JBossLog
 public class Utils {
 
-    public static void waitFor(Callable<Boolean> action, int seconds) throws TimeoutException {
-        waitFor(action, seconds, 10);
+    private static final Duration INITIAL_DELAY = Duration.ofSeconds(1);
+    private static final Duration MAX_DELAY = Duration.ofSeconds(10);
+    private static final double JITTER = 0.2;
+
+    /**
+     * Timer shared by all waits, it only schedules the re-evaluations and never evaluates the conditions itself.
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "wait-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static CompletableFuture<Void> waitFor(Callable<Boolean> action, int seconds, Executor executor) {
+        return waitFor(action, Duration.ofSeconds(seconds), INITIAL_DELAY, MAX_DELAY, executor);
+    }
+
+    /**
+     * Wait until the supplied action returns true without blocking the calling thread. <br/>
+     * The action is evaluated on the given executor, re-evaluations are scheduled on a shared timer with an exponential backoff
+     * (starting at the initial delay and capped by the max delay) and a random jitter. No thread is held between evaluations. <br/>
+     * The returned future completes when the action returns true, or exceptionally with {@link TimeoutException} when it doesn't in time.
+     * Cancelling the returned future stops any further evaluation.
+     */
+    public static CompletableFuture<Void> waitFor(Callable<Boolean> action, Duration timeout, Duration initialDelay, Duration maxDelay,
+        Executor executor) {
+        Wait wait = new Wait(action, System.nanoTime() + timeout.toNanos(), initialDelay.toNanos(), maxDelay.toNanos(), executor);
+        wait.evaluate();
+        return wait.result;
     }
 
-    public static void waitFor(Callable<Boolean> action, int seconds, int sleep) throws TimeoutException {
-        long time = System.currentTimeMillis() + (seconds * 1000L);
-        while (System.currentTimeMillis() < time) {
+    private static class Wait {
+
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private final Callable<Boolean> action;
+
+        private final long deadline;
+
+        private final long maxDelay;
+
+        private final Executor executor;
+
+        private long delay;
+
+        private volatile Future<?> scheduled;
+
+        Wait(Callable<Boolean> action, long deadline, long initialDelay, long maxDelay, Executor executor) {
+            this.action = action;
+            this.deadline = deadline;
+            this.delay = initialDelay;
+            this.maxDelay = maxDelay;
+            this.executor = executor;
+
+            result.whenComplete((v, ex) -> {
+                Future<?> next = scheduled;
+                if (ex instanceof CancellationException && next != null) {
+                    next.cancel(false);
+                }
+            });
+        }
+
+        void evaluate() {
+            try {
+                executor.execute(this::poll);
+            } catch (RejectedExecutionException ex) {
+                result.completeExceptionally(ex);
+            }
+        }
+
+        private void poll() {
+            if (result.isDone()) {
+                return;
+            }
+
             try {
                 if (action.call()) {
+                    result.complete(null);
                     return;
                 }
             } catch (Exception ex) {
-                log.error("Supplied action threw exception");
+                log.error("Supplied action threw exception: " + ex.getMessage());
             }
 
-            try {
-                Thread.sleep(sleep * 1000L);
-            } catch (InterruptedException e) {
-                log.error("Thread sleep interrupted: " + e.getMessage());
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                result.completeExceptionally(new TimeoutException("Timed out waiting"));
+                return;
             }
-        }
 
-        throw new TimeoutException("Timed out waiting");
+            long jittered = (long) (delay * (1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER)));
+            delay = Math.min(delay * 2, maxDelay);
+            scheduled = TIMER.schedule(this::evaluate, Math.min(jittered, remaining), TimeUnit.NANOSECONDS);
+        }
     }
 }
@@ -0,0 +1,182 @@
+package com.github.jsafarik.ocp.monitoring.util.http;
+
+import com.github.jsafarik.ocp.monitoring.config.Configuration;
+
+import javax.annotation.Priority;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.interceptor.Interceptor;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.internal.SSLUtils;
+import io.fabric8.kubernetes.client.utils.HttpClientUtils;
+import io.fabric8.openshift.client.DefaultOpenShiftClient;
+import io.fabric8.openshift.client.OpenShiftClient;
+import io.fabric8.openshift.client.OpenShiftConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.quarkus.runtime.StartupEvent;
+import lombok.extern.jbosslog.JBossLog;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+/**
+ * HTTP transport shared by all cluster clients and {@link HttpUtils}. <br/>
+ * All clients use the same connection pool and the same dispatcher (and so the same threads for asynchronous calls and watches),
+ * instead of a pool and a dispatcher per client. Clients with the same TLS credentials share the same SSL context,
+ * so its TLS session cache is reused. <br/>
+ * The usage of the pool and the dispatcher is published in the {@link HttpTransport#METRIC_POOL_CONNECTIONS_NAME},
+ * {@link HttpTransport#METRIC_POOL_IDLE_CONNECTIONS_NAME}, {@link HttpTransport#METRIC_DISPATCHER_RUNNING_NAME}
+ * and {@link HttpTransport#METRIC_DISPATCHER_QUEUED_NAME} gauges.
+ */
+@ApplicationScoped
+@JBossLog
+public class HttpTransport {
+
+    public static final String METRIC_POOL_CONNECTIONS_NAME = "http.pool.connections";
+    public static final String METRIC_POOL_IDLE_CONNECTIONS_NAME = "http.pool.idle.connections";
+    public static final String METRIC_DISPATCHER_RUNNING_NAME = "http.dispatcher.running";
+    public static final String METRIC_DISPATCHER_QUEUED_NAME = "http.dispatcher.queued";
+
+    private final ConnectionPool connectionPool;
+
+    private final Dispatcher dispatcher;
+
+    /**
+     * Base of all clients, clients created from it share its pool and dispatcher
+     */
+    private final OkHttpClient client;
+
+    /**
+     * Fingerprint of the TLS credentials mapped to the SSL context created for them
+     */
+    private final Map<String, Tls> tlsContexts = new ConcurrentHashMap<>();
+
+    public HttpTransport(Configuration configuration, MeterRegistry registry) {
+        this.connectionPool = new ConnectionPool(configuration.getHttpMaxIdleConnections(), configuration.getHttpKeepAlive(), TimeUnit.SECONDS);
+        this.dispatcher = new Dispatcher();
+        this.dispatcher.setMaxRequests(configuration.getHttpMaxRequests());
+        this.dispatcher.setMaxRequestsPerHost(configuration.getHttpMaxRequestsPerHost());
+        this.client = new OkHttpClient.Builder()
+            .connectionPool(connectionPool)
+            .dispatcher(dispatcher)
+            .build();
+
+        HttpUtils.init(client.newBuilder());
+
+        registry.gauge(METRIC_POOL_CONNECTIONS_NAME, Tags.empty(), connectionPool, ConnectionPool::connectionCount);
+        registry.gauge(METRIC_POOL_IDLE_CONNECTIONS_NAME, Tags.empty(), connectionPool, ConnectionPool::idleConnectionCount);
+        registry.gauge(METRIC_DISPATCHER_RUNNING_NAME, Tags.empty(), dispatcher, Dispatcher::runningCallsCount);
+        registry.gauge(METRIC_DISPATCHER_QUEUED_NAME, Tags.empty(), dispatcher, Dispatcher::queuedCallsCount);
+
+        // The dispatcher limits can change at runtime, the pool is kept until restart
+        configuration.addListener((previous, current, changed) -> {
+            if (previous.getHttpMaxRequests() != current.getHttpMaxRequests()
+                || previous.getHttpMaxRequestsPerHost() != current.getHttpMaxRequestsPerHost()) {
+                dispatcher.setMaxRequests(current.getHttpMaxRequests());
+                dispatcher.setMaxRequestsPerHost(current.getHttpMaxRequestsPerHost());
+                log.info("HTTP dispatcher limits changed to " + current.getHttpMaxRequests() + " requests, "
+                    + current.getHttpMaxRequestsPerHost() + " per host");
+            }
+        });
+    }
+
+    /**
+     * Create the transport at startup, so {@link HttpUtils} can be used by anything running afterwards.
+     */
+    void start(@Observes @Priority(Interceptor.Priority.APPLICATION - 1) StartupEvent event) {
+        log.debug("HTTP transport created");
+    }
+
+    /**
+     * Builder of a new client sharing the transport, the builder can be used to set anything else than the pool and the dispatcher.
+     */
+    public OkHttpClient.Builder newClientBuilder() {
+        return client.newBuilder();
+    }
+
+    /**
+     * Create OpenShift client using the shared transport. <br/>
+     * The client must not be closed, closing it would shut down the shared transport.
+     */
+    public OpenShiftClient createOpenShiftClient(Config config) {
+        OkHttpClient httpClient = HttpClientUtils.createHttpClient(config, builder -> {
+            builder.connectionPool(connectionPool).dispatcher(dispatcher);
+
+            Tls tls = getTls(config);
+            if (tls != null) {
+                builder.sslSocketFactory(tls.socketFactory, tls.trustManager);
+            }
+        });
+        return new DefaultOpenShiftClient(httpClient, new OpenShiftConfig(config));
+    }
+
+    /**
+     * Get the SSL context for the TLS credentials of the config, the same credentials always get the same context.
+     *
+     * @return the SSL context or null if it couldn't be created, in which case the client's own context is used
+     */
+    private Tls getTls(Config config) {
+        String fingerprint = fingerprint(config.getCaCertData(), config.getCaCertFile(), config.getClientCertData(), config.getClientCertFile(),
+            config.getClientKeyData(), config.getClientKeyFile(), config.getClientKeyAlgo(), String.valueOf(config.isTrustCerts()));
+
+        return tlsContexts.computeIfAbsent(fingerprint, key -> {
+            try {
+                TrustManager[] trustManagers = SSLUtils.trustManagers(config);
+                X509TrustManager trustManager = trustManagers == null ? null : Arrays.stream(trustManagers)
+                    .filter(X509TrustManager.class::isInstance)
+                    .map(X509TrustManager.class::cast)
+                    .findFirst()
+                    .orElse(null);
+                if (trustManager == null) {
+                    return null;
+                }
+
+                SSLContext sslContext = SSLUtils.sslContext(SSLUtils.keyManagers(config), trustManagers);
+                return new Tls(sslContext.getSocketFactory(), trustManager);
+            } catch (Exception ex) {
+                log.error("Couldn't create shared SSL context for " + config.getMasterUrl() + ": " + ex.getMessage());
+                return null;
+            }
+        });
+    }
+
+    private static String fingerprint(String... values) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String value : values) {
+                digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static class Tls {
+
+        private final SSLSocketFactory socketFactory;
+
+        private final X509TrustManager trustManager;
+
+        Tls(SSLSocketFactory socketFactory, X509TrustManager trustManager) {
+            this.socketFactory = socketFactory;
+            this.trustManager = trustManager;
+        }
+    }
+}
@@ -6,101 +6,273 @@ import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import lombok.extern.jbosslog.JBossLog;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Headers;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
 
 /**
- * Class with static methods to perform HTTP requests
+ * Class with static methods to perform HTTP requests <br/>
+ * The requests use the {@link HttpTransport} shared with the cluster clients, which creates the client of this class when it is created itself. Asynchronous requests don't hold any thread while
+ * waiting for the response, so many of them (e.g. probes of all clusters) can be dispatched from a single thread.
  */
 @JBossLog
 public class HttpUtils {
 
-    private static OkHttpClient client;
+    private static volatile OkHttpClient client;
 
-    private static OkHttpClient getClient() {
-        if (client == null) {
-            // Create a trust manager that does not validate certificate chains
-            final TrustManager[] trustAllCerts = new TrustManager[] {
-                new X509TrustManager() {
-                    @Override
-                    public void checkClientTrusted(java.security.cert.X509Certificate[] chain, String authType) {
-                    }
-
-                    @Override
-                    public void checkServerTrusted(java.security.cert.X509Certificate[] chain, String authType) {
-                    }
-
-                    @Override
-                    public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-                        return new java.security.cert.X509Certificate[] {};
-                    }
+    /**
+     * Create the client from the builder of the shared transport, called once the {@link HttpTransport} is created.
+     */
+    static void init(OkHttpClient.Builder builder) {
+        // Create a trust manager that does not validate certificate chains
+        final TrustManager[] trustAllCerts = new TrustManager[] {
+            new X509TrustManager() {
+                @Override
+                public void checkClientTrusted(java.security.cert.X509Certificate[] chain, String authType) {
+                }
+
+                @Override
+                public void checkServerTrusted(java.security.cert.X509Certificate[] chain, String authType) {
+                }
+
+                @Override
+                public java.security.cert.X509Certificate[] getAcceptedIssuers() {
+                    return new java.security.cert.X509Certificate[] {};
                 }
-            };
-
-            // Install the all-trusting trust manager
-            final SSLContext sslContext;
-            try {
-                sslContext = SSLContext.getInstance("SSL");
-                sslContext.init(null, trustAllCerts, new java.security.SecureRandom());
-                final SSLSocketFactory sslSocketFactory = sslContext.getSocketFactory();
-                OkHttpClient.Builder builder = new OkHttpClient.Builder();
-                builder.sslSocketFactory(sslSocketFactory, (X509TrustManager) trustAllCerts[0]);
-                builder.hostnameVerifier((hostname, session) -> true);
-                client = builder
-                    .connectTimeout(30, TimeUnit.SECONDS)
-                    .writeTimeout(30, TimeUnit.SECONDS)
-                    .readTimeout(30, TimeUnit.SECONDS)
-                    .build();
-            } catch (NoSuchAlgorithmException | KeyManagementException e) {
-                throw new IllegalStateException("Error while creating Http client", e);
             }
+        };
+
+        // Install the all-trusting trust manager
+        final SSLContext sslContext;
+        try {
+            sslContext = SSLContext.getInstance("SSL");
+            sslContext.init(null, trustAllCerts, new java.security.SecureRandom());
+            final SSLSocketFactory sslSocketFactory = sslContext.getSocketFactory();
+            builder.sslSocketFactory(sslSocketFactory, (X509TrustManager) trustAllCerts[0]);
+            builder.hostnameVerifier((hostname, session) -> true);
+            client = builder
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .writeTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .build();
+        } catch (NoSuchAlgorithmException | KeyManagementException e) {
+            throw new IllegalStateException("Error while creating Http client", e);
+        }
+    }
+
+    private static OkHttpClient getClient() {
+        OkHttpClient current = client;
+        if (current == null) {
+            throw new IllegalStateException("Http client isn't created until the HTTP transport is");
         }
-        return client;
+        return current;
     }
 
     public static Response doRequest(String method, String url, Headers headers, String content) {
+        return doRequest(new Request(method, url, headers, content));
+    }
+
+    /**
+     * Perform the request and wait for the response. <br/>
+     * When the request fails, the failure is logged and returned in the response.
+     */
+    public static Response doRequest(Request request) {
+        Call call = getClient().newCall(toOkHttpRequest(request));
+        try (okhttp3.Response response = call.execute()) {
+            return toResponse(response);
+        } catch (IOException ex) {
+            log.error(ex.getMessage());
+            return Response.failed(toFailure(call, ex));
+        }
+    }
+
+    /**
+     * Perform the request without blocking the calling thread. <br/>
+     * The returned future always completes normally, when the request fails, the failure is returned in the response.
+     * Cancelling the returned future cancels the request.
+     */
+    public static CompletableFuture<Response> doRequestAsync(Request request) {
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        Call call = getClient().newCall(toOkHttpRequest(request));
+
+        result.whenComplete((response, ex) -> {
+            if (result.isCancelled()) {
+                call.cancel();
+            }
+        });
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException ex) {
+                log.error(request.getMethod() + " " + request.getUrl() + " failed: " + ex.getMessage());
+                result.complete(Response.failed(toFailure(call, ex)));
+            }
+
+            @Override
+            public void onResponse(Call call, okhttp3.Response response) {
+                try (response) {
+                    result.complete(toResponse(response));
+                } catch (IOException ex) {
+                    onFailure(call, ex);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Perform all the requests without blocking the calling thread, at most the given number of them at once. <br/>
+     * The requests not finished before the deadline are cancelled and their responses report {@link Response.Failure#TIMEOUT}.
+     *
+     * @return future completed with the responses in the order of the requests, it always completes normally
+     */
+    public static CompletableFuture<List<Response>> doRequests(List<Request> requests, int concurrency, Duration deadline) {
+        Batch batch = new Batch(requests);
+        CompletableFuture.delayedExecutor(deadline.toMillis(), TimeUnit.MILLISECONDS).execute(batch::expire);
+        for (int i = 0; i < Math.max(1, concurrency); i++) {
+            batch.next();
+        }
+        return batch.result;
+    }
+
+    private static okhttp3.Request toOkHttpRequest(Request request) {
         RequestBody requestBody = null;
 
-        switch (method) {
+        switch (request.getMethod()) {
             case "GET":
             case "DELETE":
                 break;
             case "POST":
             case "PUT":
-                requestBody = RequestBody.create(MediaType.get("text/plain"), content);
+                requestBody = RequestBody.create(MediaType.get("text/plain"), request.getContent());
                 break;
             default:
-                throw new IllegalArgumentException("Unsuported HTTP request method: " + method);
+                throw new IllegalArgumentException("Unsuported HTTP request method: " + request.getMethod());
         }
 
-        Request.Builder request = new Request.Builder().url(url).method(method, requestBody);
+        okhttp3.Request.Builder builder = new okhttp3.Request.Builder().url(request.getUrl()).method(request.getMethod(), requestBody);
 
-        if (headers != null) {
-            request.headers(headers);
+        if (request.getHeaders() != null) {
+            builder.headers(request.getHeaders());
         }
 
+        return builder.build();
+    }
+
+    private static Response toResponse(okhttp3.Response response) throws IOException {
         Response internalResponse = new Response();
+        internalResponse.setCode(response.code());
+        internalResponse.setHeaders(response.headers());
+        try (ResponseBody body = response.body()) {
+            if (body != null) {
+                internalResponse.setBody(body.string());
+            }
+        }
+        return internalResponse;
+    }
+
+    private static Response.Failure toFailure(Call call, IOException ex) {
+        if (call.isCanceled()) {
+            return Response.Failure.CANCELLED;
+        } else if (ex instanceof SocketTimeoutException || ex instanceof InterruptedIOException) {
+            return Response.Failure.TIMEOUT;
+        } else if (ex instanceof ConnectException || ex instanceof UnknownHostException) {
+            return Response.Failure.CONNECTION;
+        }
+        return Response.Failure.IO;
+    }
+
+    /**
+     * Requests performed by {@link HttpUtils#doRequests(List, int, Duration)}, each finished request starts the next waiting one.
+     */
+    private static class Batch {
+
+        private final CompletableFuture<List<Response>> result = new CompletableFuture<>();
+
+        private final List<Request> requests;
+
+        private final List<CompletableFuture<Response>> responses;
+
+        private final AtomicInteger started = new AtomicInteger();
+
+        private final AtomicInteger finished = new AtomicInteger();
+
+        /**
+         * Set once the deadline passed, no waiting request is started afterwards
+         */
+        private volatile boolean expired;
 
-        try (okhttp3.Response response = getClient().newCall(request.build()).execute()) {
-            internalResponse.setCode(response.code());
-            try (ResponseBody body = response.body()) {
-                if (body != null) {
-                    internalResponse.setBody(body.string());
+        Batch(List<Request> requests) {
+            this.requests = requests;
+            this.responses = new ArrayList<>();
+            for (int i = 0; i < requests.size(); i++) {
+                responses.add(new CompletableFuture<>());
+            }
+            if (requests.isEmpty()) {
+                result.complete(new ArrayList<>());
+            }
+        }
+
+        /**
+         * Start the next waiting request, if there is any.
+         */
+        void next() {
+            if (expired) {
+                return;
+            }
+            int index = started.getAndIncrement();
+            if (index >= requests.size() || result.isDone()) {
+                return;
+            }
+
+            CompletableFuture<Response> response = responses.get(index);
+            CompletableFuture<Response> call = doRequestAsync(requests.get(index));
+            response.whenComplete((r, ex) -> call.cancel(true));
+            call.thenAccept(r -> {
+                if (response.complete(r)) {
+                    finish();
+                }
+            });
+        }
+
+        /**
+         * Complete all unfinished requests as timed out.
+         */
+        void expire() {
+            expired = true;
+            for (CompletableFuture<Response> response : responses) {
+                if (response.complete(Response.failed(Response.Failure.TIMEOUT))) {
+                    finish();
                 }
             }
-        } catch (IOException ex) {
-            log.error(ex.getMessage());
         }
 
-        return internalResponse;
+        private void finish() {
+            if (finished.incrementAndGet() == requests.size()) {
+                result.complete(responses.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+            } else {
+                next();
+            }
+        }
     }
 }
@@ -0,0 +1,31 @@
+package com.github.jsafarik.ocp.monitoring.util.http;
+
+import lombok.Getter;
+import okhttp3.Headers;
+
+/**
+ * HTTP request performed by {@link HttpUtils}
+ */
+@Getter
+public class Request {
+
+    private final String method;
+    private final String url;
+    private final Headers headers;
+    private final String content;
+
+    /**
+     * @param headers headers of the request, can be null
+     * @param content content of POST and PUT requests, null for other methods
+     */
+    public Request(String method, String url, Headers headers, String content) {
+        this.method = method;
+        this.url = url;
+        this.headers = headers;
+        this.content = content;
+    }
+
+    public static Request get(String url) {
+        return new Request("GET", url, null, null);
+    }
+}
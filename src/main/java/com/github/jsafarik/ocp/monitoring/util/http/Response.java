@@ -2,11 +2,60 @@ package com.github.jsafarik.ocp.monitoring.util.http;
 
 import lombok.Getter;
 import lombok.Setter;
+import okhttp3.Headers;
 
+/**
+ * Response to a request performed by {@link HttpUtils} <br/>
+ * When the request didn't get any response, the code is 0, the body is null and the failure says why.
+ */
 @Getter
 @Setter
 public class Response {
 
     private String body;
     private int code;
+    private Headers headers = Headers.of();
+    private Failure failure;
+
+    /**
+     * @return true if the request got a response with a 2xx code
+     */
+    public boolean isSuccessful() {
+        return failure == null && code >= 200 && code < 300;
+    }
+
+    /**
+     * @return true if the request got a response whose body contains the text
+     */
+    public boolean bodyContains(String text) {
+        return body != null && body.contains(text);
+    }
+
+    static Response failed(Failure failure) {
+        Response response = new Response();
+        response.setFailure(failure);
+        return response;
+    }
+
+    /**
+     * Reason why a request didn't get any response
+     */
+    public enum Failure {
+        /**
+         * The request didn't finish in time
+         */
+        TIMEOUT,
+        /**
+         * The connection to the server couldn't be established
+         */
+        CONNECTION,
+        /**
+         * The request was cancelled before it finished
+         */
+        CANCELLED,
+        /**
+         * Any other I/O error
+         */
+        IO
+    }
 }